@@ -0,0 +1,231 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filter for {@link FilterableArrayList} which combines several filters (clauses) with
+ * {@link Operator#AND} or {@link Operator#OR}.
+ *
+ * <h3>How it works:</h3>
+ * Evaluation stops at the first clause which decides result. Statistics are collected
+ * only for randomly sampled evaluations, one of {@link #SAMPLING_INTERVAL} on average:
+ * every clause counts its sampled evaluations and passes and measures their time. Every
+ * {@link #REORDER_INTERVAL} sampled evaluations clauses are reordered by expected cost of
+ * deciding result: for {@link Operator#AND} clauses which are cheap and rarely pass go
+ * first, for {@link Operator#OR} clauses which are cheap and often pass go first.
+ * <p>
+ * Filter may be used by parallel filtering. Counters are updated atomically, but only by
+ * sampled evaluations, so threads rarely contend on them.
+ *
+ * @param <mClass> Class of filtered elements
+ * @see FilterableArrayList#setFilter(FilterableArrayList.FilterInterface)
+ */
+public class CompositeFilter<mClass> implements FilterableArrayList.MonotonicFilterInterface<mClass> {
+    private static final String TAG = "CompositeFilter";
+    private static final int SAMPLING_INTERVAL = 16;
+    private static final int REORDER_INTERVAL = 64;
+
+    private final Operator Type;
+    private final ArrayList<Clause<mClass>> Clauses = new ArrayList<>();
+    private volatile int[] Order = new int[0];
+    private final AtomicLong EvaluationCount = new AtomicLong();
+
+    /**
+     * @param type Operator which combines clauses
+     */
+    public CompositeFilter(@NotNull Operator type) {
+        Type = type;
+    }
+
+    /**
+     * Add clause. Clauses must not be added while content is filtered, and filter must be
+     * set to {@link FilterableArrayList} again after clauses are changed.
+     *
+     * @param clause Filter to combine with previous clauses
+     * @return This filter
+     */
+    @NotNull
+    public CompositeFilter<mClass> addClause(@NotNull FilterableArrayList.FilterInterface<? super mClass> clause) {
+        Clauses.add(new Clause<mClass>(clause));
+        int[] NewOrder = new int[Clauses.size()];
+        System.arraycopy(Order, 0, NewOrder, 0, Order.length);
+        NewOrder[Order.length] = Order.length;
+        Order = NewOrder;
+        return this;
+    }
+
+    @Override
+    public boolean filter(mClass Data, String FilterString) {
+        int[] mOrder = Order;
+        boolean Sampled = ThreadLocalRandom.current().nextInt(SAMPLING_INTERVAL) == 0;
+        boolean Result = Type == Operator.AND;
+        for (int Index : mOrder) {
+            Clause<mClass> mClause = Clauses.get(Index);
+            boolean Passed = Sampled ? mClause.filterSampled(Data, FilterString)
+                    : mClause.Filter.filter(Data, FilterString);
+            if (Passed != Result) {
+                Result = !Result;
+                break;
+            }
+        }
+        if (Sampled && EvaluationCount.incrementAndGet() % REORDER_INTERVAL == 0)
+            reorder();
+        return Result;
+    }
+
+    /**
+     * Narrowing is possible only if every clause is {@link FilterableArrayList.MonotonicFilterInterface}
+     * which considers passed filter strings as narrowing.
+     */
+    @Override
+    public boolean isNarrowing(@NotNull String wideFilterString, @NotNull String narrowFilterString) {
+        for (Clause<mClass> mClause : Clauses) {
+            if (!(mClause.Filter instanceof FilterableArrayList.MonotonicFilterInterface))
+                return false;
+            if (!((FilterableArrayList.MonotonicFilterInterface<?>) mClause.Filter)
+                    .isNarrowing(wideFilterString, narrowFilterString))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Operator which combines clauses
+     */
+    @NotNull
+    public Operator getType() {
+        return Type;
+    }
+
+    /**
+     * @return Count of added clauses
+     */
+    public int getClauseCount() {
+        return Clauses.size();
+    }
+
+    /**
+     * Get current order of evaluation.
+     *
+     * @return Indexes of clauses in order they are evaluated
+     */
+    @NotNull
+    public int[] getClauseOrder() {
+        return Order.clone();
+    }
+
+    /**
+     * @return Count of sampled evaluations of whole filter
+     */
+    public long getEvaluationCount() {
+        return EvaluationCount.get();
+    }
+
+    /**
+     * Get count of sampled evaluations of clause. Without short-circuiting it would be
+     * equal to {@link #getEvaluationCount()}.
+     *
+     * @param clause Index of clause in order it was added
+     * @return Count of sampled evaluations
+     */
+    public long getClauseEvaluationCount(int clause) {
+        return Clauses.get(clause).Evaluations.get();
+    }
+
+    /**
+     * @param clause Index of clause in order it was added
+     * @return Count of sampled evaluations which clause passed
+     */
+    public long getClausePassCount(int clause) {
+        return Clauses.get(clause).Passes.get();
+    }
+
+    /**
+     * @param clause Index of clause in order it was added
+     * @return Average measured time of evaluation in nanoseconds or 0 if nothing is measured
+     */
+    public long getClauseCost(int clause) {
+        Clause<mClass> mClause = Clauses.get(clause);
+        long Evaluations = mClause.Evaluations.get();
+        return Evaluations == 0 ? 0 : mClause.Nanos.get() / Evaluations;
+    }
+
+    /**
+     * Reset all counters. Current order of evaluation is kept.
+     */
+    public void resetCounters() {
+        EvaluationCount.set(0);
+        for (Clause<mClass> mClause : Clauses) {
+            mClause.Evaluations.set(0);
+            mClause.Passes.set(0);
+            mClause.Nanos.set(0);
+        }
+    }
+
+    private void reorder(){
+        int Count = Clauses.size();
+        int[] NewOrder = new int[Count];
+        double[] Scores = new double[Count];
+        for (int i = 0; i < Count; i++) {
+            Scores[i] = Clauses.get(i).score(Type);
+            int q = i;
+            for (; q > 0 && Scores[NewOrder[q - 1]] > Scores[i]; q--)
+                NewOrder[q] = NewOrder[q - 1];
+            NewOrder[q] = i;
+        }
+        Order = NewOrder;
+    }
+
+    /**
+     * Operator which combines clauses.
+     */
+    public enum Operator{
+        /**
+         * Element passes if every clause passes it.
+         */
+        AND,
+        /**
+         * Element passes if at least one clause passes it.
+         */
+        OR
+    }
+
+    private static class Clause<mClass>{
+        final FilterableArrayList.FilterInterface<? super mClass> Filter;
+        final AtomicLong Evaluations = new AtomicLong();
+        final AtomicLong Passes = new AtomicLong();
+        final AtomicLong Nanos = new AtomicLong();
+
+        Clause(@NotNull FilterableArrayList.FilterInterface<? super mClass> Filter){
+            this.Filter = Filter;
+        }
+
+        /**
+         * Evaluate clause and update its statistics.
+         */
+        boolean filterSampled(mClass Data, String FilterString){
+            long Start = System.nanoTime();
+            boolean Result = Filter.filter(Data, FilterString);
+            Nanos.addAndGet(System.nanoTime() - Start);
+            Evaluations.incrementAndGet();
+            if (Result)
+                Passes.incrementAndGet();
+            return Result;
+        }
+
+        /**
+         * Expected cost of evaluation divided by probability that clause decides result.
+         * Clauses with lower score should be evaluated first.
+         */
+        double score(@NotNull Operator type){
+            long Count = Evaluations.get();
+            double Cost = Count == 0 ? 1 : Math.max(1, (double) Nanos.get() / Count);
+            double PassRate = (Passes.get() + 1.0) / (Count + 2.0);
+            return Cost / (type == Operator.AND ? 1 - PassRate : PassRate);
+        }
+    }
+}
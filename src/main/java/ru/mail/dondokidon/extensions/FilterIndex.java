@@ -0,0 +1,658 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Order-statistic index over match flags of {@link FilterableArrayList} elements.
+ *
+ * <h3>How it works:</h3>
+ * Flags are stored as bitmap split into blocks of up to {@link #BLOCK_BITS} bits. Size and
+ * count of set bits of every block are summed by two Fenwick trees, so block which contains
+ * some real position or some filter result position is found in O(log n). Insertion and
+ * removal shift bits only inside one block.
+ * <p>
+ * Every block also stores count of set bits before each of its sub-blocks of
+ * {@link #SUB_BLOCK_WORDS} words, so rank and select inside block check at most
+ * {@link #SUB_BLOCK_WORDS} words.
+ * <p>
+ * Blocks may be shared with snapshots created by {@link #snapshot()}. Shared block is
+ * copied before it is changed for the first time.
+ */
+final class FilterIndex {
+    static final int BLOCK_BITS = 4096;
+    private static final int BLOCK_WORDS = BLOCK_BITS >>> 6;
+    private static final int SUB_BLOCK_WORDS = 8;
+    private static final int SUB_BLOCKS = BLOCK_WORDS / SUB_BLOCK_WORDS;
+
+    private long[][] Blocks = new long[1][];
+    private int[][] SubBlockRanks = new int[1][];
+    private int[] BlockSizes = new int[1];
+    private int[] BlockCounts = new int[1];
+    private boolean[] SharedBlocks = new boolean[1];
+    private int BlocksCount = 1;
+
+    private int[] SizeTree = new int[2];
+    private int[] CountTree = new int[2];
+
+    private int Size = 0;
+    private int MatchCount = 0;
+    private int Version = 0;
+
+    FilterIndex(){
+        Blocks[0] = new long[BLOCK_WORDS];
+        SubBlockRanks[0] = new int[SUB_BLOCKS];
+    }
+
+    FilterIndex(@NotNull FilterIndex source){
+        Blocks = new long[source.BlocksCount][];
+        SubBlockRanks = new int[source.BlocksCount][];
+        for (int i = 0; i < source.BlocksCount; i++) {
+            Blocks[i] = source.Blocks[i].clone();
+            SubBlockRanks[i] = source.SubBlockRanks[i].clone();
+        }
+        BlockSizes = Arrays.copyOf(source.BlockSizes, source.BlocksCount);
+        BlockCounts = Arrays.copyOf(source.BlockCounts, source.BlocksCount);
+        SharedBlocks = new boolean[source.BlocksCount];
+        BlocksCount = source.BlocksCount;
+        Size = source.Size;
+        MatchCount = source.MatchCount;
+        rebuildTrees();
+    }
+
+    /**
+     * Create copy which shares blocks with this index in O(count of blocks). Snapshot must
+     * not be changed, and it may be read from any thread while this index is changed.
+     *
+     * @return Snapshot of this index
+     */
+    @NotNull
+    FilterIndex snapshot(){
+        FilterIndex Snapshot = new FilterIndex();
+        Snapshot.Blocks = Arrays.copyOf(Blocks, BlocksCount);
+        Snapshot.SubBlockRanks = Arrays.copyOf(SubBlockRanks, BlocksCount);
+        Snapshot.BlockSizes = Arrays.copyOf(BlockSizes, BlocksCount);
+        Snapshot.BlockCounts = Arrays.copyOf(BlockCounts, BlocksCount);
+        Snapshot.SharedBlocks = new boolean[BlocksCount];
+        Arrays.fill(Snapshot.SharedBlocks, true);
+        Snapshot.BlocksCount = BlocksCount;
+        Snapshot.Size = Size;
+        Snapshot.MatchCount = MatchCount;
+        Snapshot.rebuildTrees();
+        Arrays.fill(SharedBlocks, 0, BlocksCount, true);
+        return Snapshot;
+    }
+
+    /**
+     * @return Count of indexed elements
+     */
+    int size(){
+        return Size;
+    }
+
+    /**
+     * @return Number which is changed by every change of elements or their match flags
+     */
+    int version(){
+        return Version;
+    }
+
+    /**
+     * @return Count of matched elements
+     */
+    int matchCount(){
+        return MatchCount;
+    }
+
+    /**
+     * @return Approximate count of bytes used by this index
+     */
+    long memorySize(){
+        return (long) Blocks.length * (BLOCK_WORDS * 8 + SUB_BLOCKS * 4 + 32) + SizeTree.length * 8L;
+    }
+
+    /**
+     * Is element at real position matched.
+     */
+    boolean get(int position){
+        checkPosition(position, Size);
+        int Block = findBlockBySize(position);
+        int Offset = position - prefixSum(SizeTree, Block);
+        return (Blocks[Block][Offset >>> 6] & (1L << Offset)) != 0;
+    }
+
+    /**
+     * Change match flag of element at real position.
+     */
+    void set(int position, boolean matched){
+        checkPosition(position, Size);
+        int Block = findBlockBySize(position);
+        int Offset = position - prefixSum(SizeTree, Block);
+        long[] Words = Blocks[Block];
+        long Mask = 1L << Offset;
+        boolean Old = (Words[Offset >>> 6] & Mask) != 0;
+        if (Old == matched)
+            return;
+        int Delta = matched ? 1 : -1;
+        Words = ownBlock(Block);
+        Words[Offset >>> 6] ^= Mask;
+        Version++;
+        changeCount(Block, Delta);
+        int[] Ranks = SubBlockRanks[Block];
+        for (int i = (Offset >>> 6) / SUB_BLOCK_WORDS + 1; i < SUB_BLOCKS; i++)
+            Ranks[i] += Delta;
+    }
+
+    /**
+     * Insert element with passed match flag at real position. Elements at this position and
+     * after it are shifted.
+     */
+    void insert(int position, boolean matched){
+        checkPosition(position, Size + 1);
+        int Block = position == Size ? BlocksCount - 1 : findBlockBySize(position);
+        int Offset = position - prefixSum(SizeTree, Block);
+        if (BlockSizes[Block] == BLOCK_BITS) {
+            splitBlock(Block);
+            int Half = BLOCK_BITS >>> 1;
+            if (Offset > Half) {
+                Block++;
+                Offset -= Half;
+            }
+        }
+        long[] Words = ownBlock(Block);
+        int WordIndex = Offset >>> 6;
+        for (int i = BlockSizes[Block] >>> 6; i > WordIndex; i--)
+            Words[i] = (Words[i] << 1) | (Words[i - 1] >>> 63);
+        long LowMask = (1L << Offset) - 1;
+        long Word = Words[WordIndex];
+        Words[WordIndex] = (Word & LowMask) | ((Word & ~LowMask) << 1) | (matched ? 1L << Offset : 0);
+        BlockSizes[Block]++;
+        Size++;
+        Version++;
+        update(SizeTree, Block, 1);
+        if (matched)
+            changeCount(Block, 1);
+        updateSubBlockRanks(Block, WordIndex / SUB_BLOCK_WORDS);
+    }
+
+    /**
+     * Remove element at real position. Elements after it are shifted.
+     *
+     * @return Match flag of removed element
+     */
+    boolean remove(int position){
+        checkPosition(position, Size);
+        int Block = findBlockBySize(position);
+        int Offset = position - prefixSum(SizeTree, Block);
+        long[] Words = ownBlock(Block);
+        int WordIndex = Offset >>> 6;
+        int LastWord = (BlockSizes[Block] - 1) >>> 6;
+        long Word = Words[WordIndex];
+        boolean Matched = (Word & (1L << Offset)) != 0;
+        long LowMask = (1L << Offset) - 1;
+        Word = (Word & LowMask) | ((Word >>> 1) & ~LowMask);
+        if (WordIndex < LastWord)
+            Word |= Words[WordIndex + 1] << 63;
+        Words[WordIndex] = Word;
+        for (int i = WordIndex + 1; i <= LastWord; i++)
+            Words[i] = (Words[i] >>> 1) | (i < LastWord ? Words[i + 1] << 63 : 0);
+        BlockSizes[Block]--;
+        Size--;
+        Version++;
+        update(SizeTree, Block, -1);
+        if (Matched)
+            changeCount(Block, -1);
+        updateSubBlockRanks(Block, WordIndex / SUB_BLOCK_WORDS);
+        if (BlockSizes[Block] == 0 && BlocksCount > 1)
+            removeBlock(Block);
+        return Matched;
+    }
+
+    /**
+     * Remove all elements.
+     */
+    void clear(){
+        Blocks = new long[1][];
+        Blocks[0] = new long[BLOCK_WORDS];
+        SubBlockRanks = new int[1][];
+        SubBlockRanks[0] = new int[SUB_BLOCKS];
+        BlockSizes = new int[1];
+        BlockCounts = new int[1];
+        SharedBlocks = new boolean[1];
+        BlocksCount = 1;
+        Size = 0;
+        MatchCount = 0;
+        Version++;
+        rebuildTrees();
+    }
+
+    /**
+     * Count of matched elements before real position.
+     *
+     * @param position Real position in range [0, size()]
+     * @return Position in filter result which element at real position has or would have
+     */
+    int rank(int position){
+        checkPosition(position, Size + 1);
+        if (position == Size)
+            return MatchCount;
+        int Block = findBlockBySize(position);
+        int Offset = position - prefixSum(SizeTree, Block);
+        long[] Words = Blocks[Block];
+        int WordIndex = Offset >>> 6;
+        int SubBlock = WordIndex / SUB_BLOCK_WORDS;
+        int Rank = prefixSum(CountTree, Block) + SubBlockRanks[Block][SubBlock];
+        for (int i = SubBlock * SUB_BLOCK_WORDS; i < WordIndex; i++)
+            Rank += Long.bitCount(Words[i]);
+        if ((Offset & 63) != 0)
+            Rank += Long.bitCount(Words[WordIndex] & ((1L << Offset) - 1));
+        return Rank;
+    }
+
+    /**
+     * Real position of matched element.
+     *
+     * @param index Position in filter result
+     * @return Real position
+     */
+    int select(int index){
+        checkPosition(index, MatchCount);
+        int Block = lowerBound(CountTree, index);
+        int Remaining = index - prefixSum(CountTree, Block);
+        long[] Words = Blocks[Block];
+        int[] Ranks = SubBlockRanks[Block];
+        int SubBlock = 0;
+        while (SubBlock + 1 < SUB_BLOCKS && Ranks[SubBlock + 1] <= Remaining)
+            SubBlock++;
+        Remaining -= Ranks[SubBlock];
+        int WordIndex = SubBlock * SUB_BLOCK_WORDS;
+        int Count;
+        while ((Count = Long.bitCount(Words[WordIndex])) <= Remaining) {
+            Remaining -= Count;
+            WordIndex++;
+        }
+        long Word = Words[WordIndex];
+        for (; Remaining > 0; Remaining--)
+            Word &= Word - 1;
+        return prefixSum(SizeTree, Block) + (WordIndex << 6) + Long.numberOfTrailingZeros(Word);
+    }
+
+    /**
+     * Copy match flags into flat bitmap, where flag of element at real position p is bit
+     * (p % 64) of word (p / 64).
+     *
+     * @return Bitmap of match flags
+     */
+    @NotNull
+    long[] toBitmap(){
+        long[] Bitmap = new long[(Size + 63) >>> 6];
+        int Position = 0;
+        for (int b = 0; b < BlocksCount; b++) {
+            long[] Words = Blocks[b];
+            for (int w = 0, BlockSize = BlockSizes[b]; w << 6 < BlockSize; w++) {
+                int Bits = Math.min(64, BlockSize - (w << 6));
+                int Index = Position >>> 6;
+                int Shift = Position & 63;
+                Bitmap[Index] |= Words[w] << Shift;
+                if (Shift != 0 && Shift + Bits > 64)
+                    Bitmap[Index + 1] |= Words[w] >>> (64 - Shift);
+                Position += Bits;
+            }
+        }
+        return Bitmap;
+    }
+
+    /**
+     * Replace all elements with new ones, which match flags are decided by passed filter.
+     *
+     * @param size Count of new elements
+     * @param filter Filter which is called with real positions of new elements or null if
+     *               every element is matched
+     * @param pool Pool to check blocks in parallel or null to check them on calling thread
+     */
+    void fill(int size, @Nullable PositionFilter filter, @Nullable ForkJoinPool pool){
+        resetBlocks(size);
+        checkBlocks(filter, false, pool);
+    }
+
+    /**
+     * Replace all elements with new ones, where only elements at passed positions are matched.
+     *
+     * @param size Count of new elements
+     * @param positions Sorted real positions of matched elements
+     * @param count Count of used values in positions array
+     */
+    void fill(int size, @NotNull int[] positions, int count){
+        resetBlocks(size);
+        for (int i = 0; i < count; i++) {
+            int Block = positions[i] / BLOCK_BITS;
+            int Offset = positions[i] % BLOCK_BITS;
+            Blocks[Block][Offset >>> 6] |= 1L << Offset;
+            BlockCounts[Block]++;
+        }
+        for (int i = 0; i < BlocksCount; i++)
+            updateSubBlockRanks(i, 0);
+        MatchCount = count;
+        rebuildTrees();
+    }
+
+    /**
+     * Replace all elements with new ones, which match flags are copied from flat bitmap.
+     *
+     * @param size Count of new elements
+     * @param bitmap Bitmap of match flags in format of {@link #toBitmap()}
+     */
+    void fill(int size, @NotNull long[] bitmap){
+        resetBlocks(size);
+        int Count = 0;
+        for (int b = 0; b < BlocksCount; b++) {
+            long[] Words = Blocks[b];
+            int WordsCount = (BlockSizes[b] + 63) >>> 6;
+            System.arraycopy(bitmap, b * BLOCK_WORDS, Words, 0, WordsCount);
+            if ((BlockSizes[b] & 63) != 0)
+                Words[WordsCount - 1] &= (1L << BlockSizes[b]) - 1;
+            for (int w = 0; w < WordsCount; w++)
+                BlockCounts[b] += Long.bitCount(Words[w]);
+            Count += BlockCounts[b];
+            updateSubBlockRanks(b, 0);
+        }
+        MatchCount = Count;
+        rebuildTrees();
+    }
+
+    /**
+     * Remove elements at positions marked in passed bitmap, preserving flags of the rest.
+     *
+     * @param removed Bitmap of positions to remove, at least {@link #size()} bits long
+     */
+    void removeAll(@NotNull long[] removed){
+        long[] Bitmap = toBitmap();
+        int[] Positions = new int[MatchCount];
+        int Count = 0;
+        int NewSize = 0;
+        for (int w = 0; w < Bitmap.length; w++) {
+            long Kept = ~removed[w];
+            for (long Bits = Bitmap[w] & Kept; Bits != 0; Bits &= Bits - 1) {
+                int Bit = Long.numberOfTrailingZeros(Bits);
+                Positions[Count++] = NewSize + Long.bitCount(Kept & ((1L << Bit) - 1));
+            }
+            NewSize += Math.min(64, Size - (w << 6)) - Long.bitCount(removed[w]);
+        }
+        fill(NewSize, Positions, Count);
+    }
+
+    /**
+     * Replace all elements with new unmatched ones, which are placed in full blocks.
+     */
+    private void resetBlocks(int size){
+        int Count = Math.max(1, (size + BLOCK_BITS - 1) / BLOCK_BITS);
+        ensureBlocksCapacity(Count);
+        for (int i = Count; i < BlocksCount; i++) {
+            Blocks[i] = null;
+            SubBlockRanks[i] = null;
+        }
+        BlocksCount = Count;
+        for (int i = 0; i < Count; i++) {
+            BlockSizes[i] = Math.min(BLOCK_BITS, size - i * BLOCK_BITS);
+            BlockCounts[i] = 0;
+            if (Blocks[i] == null || SharedBlocks[i]) {
+                Blocks[i] = new long[BLOCK_WORDS];
+                SubBlockRanks[i] = new int[SUB_BLOCKS];
+                SharedBlocks[i] = false;
+            } else
+                Arrays.fill(Blocks[i], 0);
+        }
+        Size = size;
+        Version++;
+    }
+
+    /**
+     * Clear match flags of matched elements which don't pass passed filter. Elements that
+     * are not matched are not checked.
+     *
+     * @param filter Filter which is called with real positions of matched elements
+     * @param pool Pool to check blocks in parallel or null to check them on calling thread
+     */
+    void retain(@NotNull PositionFilter filter, @Nullable ForkJoinPool pool){
+        checkBlocks(filter, true, pool);
+    }
+
+    private void checkBlocks(@Nullable PositionFilter filter, boolean onlyMatched,
+                             @Nullable ForkJoinPool pool){
+        int[] BlockBases = new int[BlocksCount];
+        for (int i = 1; i < BlocksCount; i++)
+            BlockBases[i] = BlockBases[i - 1] + BlockSizes[i - 1];
+        if (pool == null || BlocksCount == 1)
+            checkBlocks(0, BlocksCount, BlockBases, filter, onlyMatched);
+        else
+            pool.invoke(new CheckBlocksTask(0, BlocksCount, BlockBases, filter, onlyMatched));
+        MatchCount = 0;
+        for (int i = 0; i < BlocksCount; i++)
+            MatchCount += BlockCounts[i];
+        Version++;
+        rebuildTrees();
+    }
+
+    private void checkBlocks(int fromBlock, int toBlock, int[] blockBases,
+                             @Nullable PositionFilter filter, boolean onlyMatched){
+        for (int b = fromBlock; b < toBlock; b++) {
+            long[] Words = ownBlock(b);
+            int Base = blockBases[b];
+            int Count = 0;
+            for (int w = 0, WordsCount = (BlockSizes[b] + 63) >>> 6; w < WordsCount; w++) {
+                long Word;
+                if (onlyMatched) {
+                    Word = Words[w];
+                    for (long Bits = Word; Bits != 0; Bits &= Bits - 1) {
+                        int Bit = Long.numberOfTrailingZeros(Bits);
+                        if (!filter.matches(Base + (w << 6) + Bit))
+                            Word &= ~(1L << Bit);
+                    }
+                } else {
+                    int Bits = Math.min(64, BlockSizes[b] - (w << 6));
+                    if (filter == null)
+                        Word = Bits == 64 ? -1L : (1L << Bits) - 1;
+                    else {
+                        Word = 0;
+                        for (int Bit = 0; Bit < Bits; Bit++)
+                            if (filter.matches(Base + (w << 6) + Bit))
+                                Word |= 1L << Bit;
+                    }
+                }
+                Words[w] = Word;
+                Count += Long.bitCount(Word);
+            }
+            BlockCounts[b] = Count;
+            updateSubBlockRanks(b, 0);
+        }
+    }
+
+    @SuppressWarnings("serial") //Tasks are never serialized.
+    private class CheckBlocksTask extends RecursiveAction{
+        private final int FromBlock;
+        private final int ToBlock;
+        private final int[] BlockBases;
+        private final PositionFilter Filter;
+        private final boolean OnlyMatched;
+
+        CheckBlocksTask(int fromBlock, int toBlock, int[] blockBases,
+                        @Nullable PositionFilter filter, boolean onlyMatched){
+            FromBlock = fromBlock;
+            ToBlock = toBlock;
+            BlockBases = blockBases;
+            Filter = filter;
+            OnlyMatched = onlyMatched;
+        }
+
+        @Override
+        protected void compute() {
+            if (ToBlock - FromBlock == 1) {
+                checkBlocks(FromBlock, ToBlock, BlockBases, Filter, OnlyMatched);
+                return;
+            }
+            int Middle = (FromBlock + ToBlock) >>> 1;
+            invokeAll(new CheckBlocksTask(FromBlock, Middle, BlockBases, Filter, OnlyMatched),
+                    new CheckBlocksTask(Middle, ToBlock, BlockBases, Filter, OnlyMatched));
+        }
+    }
+
+    private int findBlockBySize(int position){
+        return lowerBound(SizeTree, position);
+    }
+
+    /**
+     * Recount set bits before sub-blocks which follow passed sub-block.
+     */
+    private void updateSubBlockRanks(int block, int subBlock){
+        long[] Words = Blocks[block];
+        int[] Ranks = SubBlockRanks[block];
+        for (int i = subBlock + 1; i < SUB_BLOCKS; i++) {
+            int Rank = Ranks[i - 1];
+            for (int w = (i - 1) * SUB_BLOCK_WORDS; w < i * SUB_BLOCK_WORDS; w++)
+                Rank += Long.bitCount(Words[w]);
+            Ranks[i] = Rank;
+        }
+    }
+
+    /**
+     * Copy block if it is shared with snapshot.
+     *
+     * @return Words of block which may be changed
+     */
+    private long[] ownBlock(int block){
+        if (SharedBlocks[block]) {
+            Blocks[block] = Blocks[block].clone();
+            SubBlockRanks[block] = SubBlockRanks[block].clone();
+            SharedBlocks[block] = false;
+        }
+        return Blocks[block];
+    }
+
+    private void changeCount(int block, int delta){
+        BlockCounts[block] += delta;
+        MatchCount += delta;
+        update(CountTree, block, delta);
+    }
+
+    private void splitBlock(int block){
+        ownBlock(block);
+        ensureBlocksCapacity(BlocksCount + 1);
+        System.arraycopy(Blocks, block + 1, Blocks, block + 2, BlocksCount - block - 1);
+        System.arraycopy(SubBlockRanks, block + 1, SubBlockRanks, block + 2, BlocksCount - block - 1);
+        System.arraycopy(BlockSizes, block + 1, BlockSizes, block + 2, BlocksCount - block - 1);
+        System.arraycopy(BlockCounts, block + 1, BlockCounts, block + 2, BlocksCount - block - 1);
+        System.arraycopy(SharedBlocks, block + 1, SharedBlocks, block + 2, BlocksCount - block - 1);
+        BlocksCount++;
+
+        int HalfWords = BLOCK_WORDS >>> 1;
+        long[] Old = Blocks[block];
+        long[] New = new long[BLOCK_WORDS];
+        System.arraycopy(Old, HalfWords, New, 0, HalfWords);
+        Arrays.fill(Old, HalfWords, BLOCK_WORDS, 0);
+        int NewCount = 0;
+        for (int i = 0; i < HalfWords; i++)
+            NewCount += Long.bitCount(New[i]);
+        Blocks[block + 1] = New;
+        SubBlockRanks[block + 1] = new int[SUB_BLOCKS];
+        SharedBlocks[block + 1] = false;
+        updateSubBlockRanks(block, 0);
+        updateSubBlockRanks(block + 1, 0);
+        BlockSizes[block] = BLOCK_BITS >>> 1;
+        BlockSizes[block + 1] = BLOCK_BITS >>> 1;
+        BlockCounts[block + 1] = NewCount;
+        BlockCounts[block] -= NewCount;
+        rebuildTrees();
+    }
+
+    private void removeBlock(int block){
+        System.arraycopy(Blocks, block + 1, Blocks, block, BlocksCount - block - 1);
+        System.arraycopy(SubBlockRanks, block + 1, SubBlockRanks, block, BlocksCount - block - 1);
+        System.arraycopy(BlockSizes, block + 1, BlockSizes, block, BlocksCount - block - 1);
+        System.arraycopy(BlockCounts, block + 1, BlockCounts, block, BlocksCount - block - 1);
+        System.arraycopy(SharedBlocks, block + 1, SharedBlocks, block, BlocksCount - block - 1);
+        BlocksCount--;
+        Blocks[BlocksCount] = null;
+        SubBlockRanks[BlocksCount] = null;
+        rebuildTrees();
+    }
+
+    private void ensureBlocksCapacity(int capacity){
+        if (Blocks.length >= capacity)
+            return;
+        int NewCapacity = Math.max(capacity, Blocks.length << 1);
+        Blocks = Arrays.copyOf(Blocks, NewCapacity);
+        SubBlockRanks = Arrays.copyOf(SubBlockRanks, NewCapacity);
+        BlockSizes = Arrays.copyOf(BlockSizes, NewCapacity);
+        BlockCounts = Arrays.copyOf(BlockCounts, NewCapacity);
+        SharedBlocks = Arrays.copyOf(SharedBlocks, NewCapacity);
+    }
+
+    private void rebuildTrees(){
+        if (SizeTree.length < BlocksCount + 1) {
+            SizeTree = new int[Blocks.length + 1];
+            CountTree = new int[Blocks.length + 1];
+        }
+        Arrays.fill(SizeTree, 0);
+        Arrays.fill(CountTree, 0);
+        for (int i = 0; i < BlocksCount; i++) {
+            SizeTree[i + 1] += BlockSizes[i];
+            CountTree[i + 1] += BlockCounts[i];
+            int Parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (Parent <= BlocksCount) {
+                SizeTree[Parent] += SizeTree[i + 1];
+                CountTree[Parent] += CountTree[i + 1];
+            }
+        }
+    }
+
+    private void update(int[] tree, int block, int delta){
+        for (int i = block + 1; i <= BlocksCount; i += i & -i)
+            tree[i] += delta;
+    }
+
+    /**
+     * Sum of values of blocks before passed block.
+     */
+    private int prefixSum(int[] tree, int block){
+        int Sum = 0;
+        for (int i = block; i > 0; i -= i & -i)
+            Sum += tree[i];
+        return Sum;
+    }
+
+    /**
+     * Find first block which prefix sum (including itself) is greater than value.
+     */
+    private int lowerBound(int[] tree, int value){
+        int Position = 0;
+        int Step = Integer.highestOneBit(BlocksCount);
+        for (; Step > 0; Step >>>= 1) {
+            int Next = Position + Step;
+            if (Next <= BlocksCount && tree[Next] <= value) {
+                Position = Next;
+                value -= tree[Next];
+            }
+        }
+        return Position;
+    }
+
+    /**
+     * Interface for filter of elements by their real positions.
+     */
+    interface PositionFilter{
+        /**
+         * @param position Real position of element
+         * @return Is element should remain matched
+         */
+        boolean matches(int position);
+    }
+
+    private static void checkPosition(int position, int bound){
+        if (position < 0 || position >= bound)
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + bound);
+    }
+}
@@ -1,12 +1,52 @@
 package ru.mail.dondokidon.extensions;
 
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.RequiresApi;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Extended ArrayList class which provide methods to filter content without changes in real
@@ -16,10 +56,57 @@ import java.util.ListIterator;
  */
 public class FilterableArrayList <mClass>extends ArrayList<mClass> {
     private static final String TAG ="FilterableArrayList";
+    private static final int FILTER_RESULTS_STACK_DEPTH = 8;
+    private static final int NOTIFICATION_NONE = 0;
+    private static final int NOTIFICATION_INSERTED = 1;
+    private static final int NOTIFICATION_REMOVED = 2;
+    private static final int NOTIFICATION_CHANGED = 3;
+    private static final int NOTIFICATION_DATA_SET_CHANGED = 4;
+    private static final int HASH_LOOKUP_THRESHOLD = 16;
+    private static final int LAZY_FILTER_CHUNK = 256;
+    private static final long[] RANKED_NOTIFICATION_BITMAP = new long[0];
+    private static final int FILE_MAGIC = 0x46414C53;
+    private static final int FILE_VERSION = 2;
+    private static final int FILE_FLAG_SEARCH_KEYS = 1;
+    private static final int FILE_FLAG_TRIGRAMS = 2;
+    /**
+     * Default minimum count of checked elements to filter them in parallel.
+     *
+     * @see #setParallelFilterPool(ForkJoinPool)
+     */
+    public static final int DEFAULT_PARALLEL_FILTER_THRESHOLD = 16384;
 
-    private ArrayList<DataHolder> FilterResult = new ArrayList<>();
+    private FilterIndex FilterResult = new FilterIndex();
     private FilterInterface<? super mClass> Filter = null;
     private String FilterString = "";
+    private final ArrayList<CachedFilterResult> FilterResultsStack = new ArrayList<>();
+    private ForkJoinPool ParallelFilterPool = null;
+    private int ParallelFilterThreshold = DEFAULT_PARALLEL_FILTER_THRESHOLD;
+    private final AtomicInteger FilterGeneration = new AtomicInteger();
+    private int ContentVersion = 0;
+    private int BatchDepth = 0;
+    private int BatchContentVersion = 0;
+    private boolean BatchFilterChanged = false;
+    private final ArrayList<FilterResultListener<mClass>> Listeners = new ArrayList<>();
+    private int PendingNotification = NOTIFICATION_NONE;
+    private int PendingPosition = 0;
+    private int PendingCount = 0;
+    private final LinkedHashMap<FilterResultCacheKey, FilterIndex> FilterResultCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long FilterResultCacheSize = 0;
+    private int LazyFilterWindow = 0;
+    private int ScannedSize = 0;
+    private int RankedLimit = 0;
+    private int[] RankedPositions = null;
+    private FilterIndex RankedFilterResult = null;
+    private int RankedFilterResultVersion = 0;
+    private int RankedContentVersion = 0;
+    private FilterInterface<? super mClass> RankedFilter = null;
+    private String RankedFilterString = null;
+    private SearchKeyExtractor<? super mClass> KeyExtractor = null;
+    private ArrayList<String> SearchKeys = null;
+    private TrigramIndex Trigrams = null;
+    private Object[] SnapshotElements = null;
 
     /**
      * @see ArrayList#ArrayList(int)
@@ -49,7 +136,7 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      * @return Size of filter result list
      */
     public int filterResultSize(){
-        return FilterResult.size();
+        return isRanked() ? getRankedPositions().length : FilterResult.matchCount();
     }
 
     /**
@@ -66,7 +153,7 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      * @return <tt>true</tt> if filter result list contains no elements.
      */
     public boolean isFilterResultEmpty(){
-        return FilterResult.isEmpty();
+        return filterResultSize() == 0;
     }
 
     /**
@@ -79,16 +166,27 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      * @return <tt>true</tt> if filter result list contains the specified element
      */
     public boolean filterResultContains(@Nullable Object o) {
-        return FilterResult.contains(o);
+        return filterResultIndexOf(o) != -1;
     }
 
     @NotNull
     @Override
     public Object clone() {
         FilterableArrayList<mClass> clone = new FilterableArrayList<>(this);
-        clone.FilterResult = new ArrayList<>(FilterResult);
+        clone.FilterResult = new FilterIndex(FilterResult);
         clone.Filter = Filter;
         clone.FilterString = FilterString;
+        clone.LazyFilterWindow = LazyFilterWindow;
+        clone.ScannedSize = ScannedSize;
+        clone.RankedLimit = RankedLimit;
+        clone.ParallelFilterPool = ParallelFilterPool;
+        clone.ParallelFilterThreshold = ParallelFilterThreshold;
+        clone.FilterResultCacheSize = FilterResultCacheSize;
+        clone.KeyExtractor = KeyExtractor;
+        if (SearchKeys != null)
+            clone.SearchKeys = new ArrayList<>(SearchKeys);
+        if (Trigrams != null)
+            clone.rebuildTrigramIndex();
         return clone;
     }
 
@@ -100,7 +198,43 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      * @throws IndexOutOfBoundsException {@inheritDoc}
      */
     public mClass filterResultGet(int index){
-        return FilterResult.get(index).Data;
+        if (!isRanked() && index >= FilterResult.matchCount())
+            scanFilterResult(index + 1);
+        return get(getRealPosition(index));
+    }
+
+    /**
+     * Translate position in filter result list into position in real data set.
+     *
+     * @param filterResultIndex Index of the element in filter result list
+     * @return Index of the same element in real data set
+     * @throws IndexOutOfBoundsException if index is out of filter result list range
+     */
+    public int getRealPosition(int filterResultIndex){
+        if (isRanked())
+            return getRankedPositions()[filterResultIndex];
+        return FilterResult.select(filterResultIndex);
+    }
+
+    /**
+     * Translate position in real data set into position in filter result list.
+     *
+     * @param index Index of the element in real data set
+     * @return Index of the same element in filter result list or -1 if element
+     * doesn't pass the filter
+     * @throws IndexOutOfBoundsException if index is out of real data set range
+     */
+    public int getFilterResultPosition(int index){
+        if (!FilterResult.get(index))
+            return -1;
+        if (isRanked()) {
+            int[] Positions = getRankedPositions();
+            for (int i = 0; i < Positions.length; i++)
+                if (Positions[i] == index)
+                    return i;
+            return -1;
+        }
+        return FilterResult.rank(index);
     }
 
     /**
@@ -108,23 +242,12 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     public mClass set(int index, mClass element) {
+        onContentChanged();
         mClass Item = super.set(index, element);
-        if (Filter != null){
-            if (Filter.filter(element, FilterString)) {
-                int FilterResultChildPosition = findFilterResultChildPositionByRealPosition(index);
-                if (FilterResultChildPosition != -1) {
-                    FilterResult.set(FilterResultChildPosition, new DataHolder(index, element));
-                } else {
-                    addFilterResultItem(new DataHolder(index, element));
-                }
-            } else {
-                if (Filter.filter(Item, FilterString))
-                    removeFilterResultItem(index);
-            }
-        } else {
-            int FilterResultChildPosition = findFilterResultChildPositionByRealPosition(index);
-            FilterResult.set(FilterResultChildPosition, new DataHolder(index, element));
-        }
+        setKey(index);
+        if (BatchDepth == 0)
+            setMatch(index);
+        flushNotifications();
         return Item;
     }
 
@@ -133,10 +256,12 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     public boolean add(mClass o) {
+        onContentChanged();
         boolean ret = super.add(o);
-        if (Filter == null || Filter.filter(o, FilterString)){
-            FilterResult.add(new DataHolder(size() - 1, o));
-        }
+        insertKeys(size() - 1, 1);
+        if (BatchDepth == 0)
+            insertMatch(size() - 1);
+        flushNotifications();
         return ret;
     }
 
@@ -145,13 +270,12 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     public void add(int index, mClass element) {
+        onContentChanged();
         super.add(index, element);
-        if (Filter == null || Filter.filter(element, FilterString)){
-            for (DataHolder Item : FilterResult)
-                if (Item.position >= index)
-                    Item.position++;
-            addFilterResultItem(new DataHolder(index, element));
-        }
+        insertKeys(index, 1);
+        if (BatchDepth == 0)
+            insertMatch(index);
+        flushNotifications();
     }
 
     /**
@@ -159,11 +283,12 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     public mClass remove(int index) {
+        onContentChanged();
         mClass Item = super.remove(index);
-        removeFilterResultItem(index);
-        for (DataHolder mData : FilterResult)
-            if (mData.position > index)
-                mData.position--;
+        removeKeys(index, index + 1);
+        if (BatchDepth == 0)
+            removeMatch(index);
+        flushNotifications();
         return Item;
     }
 
@@ -173,14 +298,15 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
     @Override
     public boolean remove(@Nullable Object o) {
         int indexOf = indexOf(o);
-        boolean ret = super.remove(o);
-        if (ret) {
-            removeFilterResultItem(indexOf);
-            for (DataHolder mData : FilterResult)
-                if (mData.position > indexOf)
-                    mData.position--;
-        }
-        return ret;
+        if (indexOf == -1)
+            return false;
+        onContentChanged();
+        super.remove(indexOf);
+        removeKeys(indexOf, indexOf + 1);
+        if (BatchDepth == 0)
+            removeMatch(indexOf);
+        flushNotifications();
+        return true;
     }
 
     /**
@@ -188,32 +314,34 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     public void clear() {
+        onContentChanged();
+        int Size = size();
         super.clear();
-        FilterResult.clear();
+        removeKeys(0, Size);
+        if (BatchDepth == 0) {
+            notifyRemoved(0, FilterResult.matchCount());
+            FilterResult.clear();
+            ScannedSize = 0;
+            for (FilterIndex Cached : FilterResultCache.values())
+                Cached.clear();
+            flushNotifications();
+        }
     }
 
     /**
      * @see ArrayList#addAll(Collection)
      */
     @Override
-    @SuppressWarnings("unchecked")
     public boolean addAll(@NotNull Collection<? extends mClass> c) {
+        onContentChanged();
         int Size = size();
         boolean ret = super.addAll(c);
-        int i = 0;
-        if (Filter == null) {
-            for (mClass o : (mClass[]) c.toArray()) {
-                addFilterResultItem(new DataHolder(Size + i, o));
-                i++;
-            }
-        } else {
-            for (mClass o : (mClass[]) c.toArray()) {
-                if (Filter.filter(o, FilterString)) {
-                    addFilterResultItem(new DataHolder(Size + i, o));
-                }
-                i++;
-            }
-        }
+        int Count = size() - Size;
+        insertKeys(Size, Count);
+        if (BatchDepth == 0)
+            for (int i = 0; i < Count; i++)
+                insertMatch(Size + i);
+        flushNotifications();
         return ret;
     }
 
@@ -222,24 +350,15 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     public boolean addAll(int index, @NotNull Collection<? extends mClass> c) {
+        onContentChanged();
+        int Size = size();
         boolean ret = super.addAll(index, c);
-        for (DataHolder Item : FilterResult)
-            if (Item.position >= index)
-                Item.position+= c.size();
-        int i = 0;
-        if (Filter == null){
-            for (mClass o : c) {
-                addFilterResultItem(new DataHolder(index + i, o));
-                i++;
-            }
-        } else {
-            for (mClass o : c) {
-                if (Filter.filter(o, FilterString)) {
-                    addFilterResultItem(new DataHolder(index + i, o));
-                }
-                i++;
-            }
-        }
+        int Count = size() - Size;
+        insertKeys(index, Count);
+        if (BatchDepth == 0)
+            for (int i = 0; i < Count; i++)
+                insertMatch(index + i);
+        flushNotifications();
         return ret;
     }
 
@@ -248,59 +367,113 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      */
     @Override
     protected void removeRange(int fromIndex, int toIndex) {
-        int i = 0;
-        ListIterator<mClass> mIterator = listIterator(fromIndex);
-        if (mIterator.hasNext()) {
-            for (mIterator.next(); mIterator.nextIndex() < toIndex; mIterator.next()) {
-                int CurrentItemPos = mIterator.previousIndex() - i;
-                removeFilterResultItem(CurrentItemPos);
-                for (DataHolder mData : FilterResult) {
-                    if (mData.position > CurrentItemPos)
-                        mData.position--;
-                }
-                i++;
-            }
-        }
+        onContentChanged();
         super.removeRange(fromIndex, toIndex);
+        removeKeys(fromIndex, toIndex);
+        if (BatchDepth == 0)
+            for (int i = toIndex - 1; i >= fromIndex; i--)
+                removeMatch(i);
+        flushNotifications();
     }
 
     /**
+     * Removes all matching elements in one pass. If the specified collection is not a
+     * {@link Set} and is large, its elements are looked up in {@link HashSet} copy.
+     *
      * @see ArrayList#removeAll(Collection)
      */
     @Override
-    @SuppressWarnings("unchecked")
     public boolean removeAll(@NotNull Collection c) {
-        int i = 0;
-        for (mClass o : ((Collection<mClass>) c)){
-            int indexOf = indexOf(o) - i;
-            removeFilterResultItem(indexOf);
-            for (DataHolder mData : FilterResult) {
-                if (mData.position > indexOf)
-                    mData.position--;
-            }
-            i++;
-        }
-        return super.removeAll(c);
+        return batchRemove(c, false);
     }
 
     /**
+     * Removes all not matching elements in one pass. If the specified collection is not a
+     * {@link Set} and is large, its elements are looked up in {@link HashSet} copy.
+     *
      * @see ArrayList#retainAll(Collection)
      */
     @Override
     public boolean retainAll(@NotNull Collection c) {
-        int i = 0;
-        for (mClass o : this){
-            if (!c.contains(o)){
-                int indexOf = indexOf(o) - i;
-                removeFilterResultItem(indexOf);
-                for (DataHolder mData : FilterResult) {
-                    if (mData.position > indexOf)
-                        mData.position--;
-                }
-                i++;
+        return batchRemove(c, true);
+    }
+
+    /**
+     * Removes all elements which pass the predicate in one pass.
+     *
+     * @see ArrayList#removeIf(Predicate)
+     */
+    @Override
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public boolean removeIf(@NotNull Predicate<? super mClass> filter) {
+        int Size = size();
+        long[] Removed = new long[(Size + 63) >>> 6];
+        boolean Found = false;
+        for (int i = 0; i < Size; i++)
+            if (filter.test(get(i))) {
+                Removed[i >>> 6] |= 1L << i;
+                Found = true;
+            }
+        if (Found)
+            removeMarked(Removed);
+        return Found;
+    }
+
+    /**
+     * Search keys, trigram index and match flags are moved with elements, so content is
+     * not filtered again. Listeners are notified about data set change.
+     *
+     * @see ArrayList#sort(Comparator)
+     */
+    @Override
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public void sort(@Nullable final Comparator<? super mClass> c) {
+        onContentChanged();
+        final Object[] Items = toArray();
+        Integer[] Order = new Integer[Items.length];
+        for (int i = 0; i < Order.length; i++)
+            Order[i] = i;
+        Arrays.sort(Order, new Comparator<Integer>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public int compare(Integer o1, Integer o2) {
+                if (c == null)
+                    return ((Comparable<Object>) Items[o1]).compareTo(Items[o2]);
+                return c.compare((mClass) Items[o1], (mClass) Items[o2]);
             }
+        });
+        for (int i = 0; i < Order.length; i++) {
+            @SuppressWarnings("unchecked")
+            mClass Item = (mClass) Items[Order[i]];
+            super.set(i, Item);
+        }
+        modCount++;
+        reorderElements(Order);
+    }
+
+    /**
+     * Search keys of all elements and trigram index are recomputed and content is filtered
+     * again. Listeners are notified about data set change.
+     *
+     * @see ArrayList#replaceAll(UnaryOperator)
+     */
+    @Override
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public void replaceAll(@NotNull UnaryOperator<mClass> operator) {
+        onContentChanged();
+        for (int i = 0, Size = size(); i < Size; i++) {
+            super.set(i, operator.apply(get(i)));
+            if (SearchKeys != null)
+                SearchKeys.set(i, KeyExtractor.getSearchKey(get(i)));
+        }
+        modCount++;
+        if (Trigrams != null)
+            rebuildTrigramIndex();
+        FilterResultCache.clear();
+        if (BatchDepth == 0) {
+            fillFilterResult();
+            triggerListenersDataSetChanged();
         }
-        return super.retainAll(c);
     }
 
     /**
@@ -319,7 +492,17 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      * or -1 if there is no such index.
      */
     public int filterResultIndexOf(@Nullable Object o) {
-        return FilterResult.indexOf(o);
+        if (isRanked()) {
+            int[] Positions = getRankedPositions();
+            for (int i = 0; i < Positions.length; i++)
+                if (o == null ? get(Positions[i]) == null : o.equals(get(Positions[i])))
+                    return i;
+            return -1;
+        }
+        for (int i = 0, Size = size(); i < Size; i++)
+            if ((o == null ? get(i) == null : o.equals(get(i))) && FilterResult.get(i))
+                return FilterResult.rank(i);
+        return -1;
     }
 
     /**
@@ -338,7 +521,17 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      * or -1 if there is no such index.
      */
     public int filterResultLastIndexOf(@Nullable Object o) {
-        return FilterResult.lastIndexOf(o);
+        if (isRanked()) {
+            int[] Positions = getRankedPositions();
+            for (int i = Positions.length - 1; i >= 0; i--)
+                if (o == null ? get(Positions[i]) == null : o.equals(get(Positions[i])))
+                    return i;
+            return -1;
+        }
+        for (int i = size() - 1; i >= 0; i--)
+            if ((o == null ? get(i) == null : o.equals(get(i))) && FilterResult.get(i))
+                return FilterResult.rank(i);
+        return -1;
     }
 
     /**
@@ -365,6 +558,251 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
         return super.subList(fromIndex, toIndex);
     }
 
+    /**
+     * Creates {@link Spliterator} over elements of filter result list, which reports
+     * {@link Spliterator#SIZED}, {@link Spliterator#SUBSIZED} and {@link Spliterator#ORDERED}
+     * and splits filter result list into halves. Neither content nor filter result should
+     * be changed while it is traversed.
+     *
+     * @return {@link Spliterator} over filter result list
+     */
+    @NotNull
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public Spliterator<mClass> filterResultSpliterator(){
+        return new FilterResultSpliterator(0, filterResultSize());
+    }
+
+    /**
+     * Returns sequential {@link Stream} over elements of filter result list.
+     *
+     * @return {@link Stream} over filter result list
+     * @see #filterResultSpliterator()
+     */
+    @NotNull
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public Stream<mClass> filterResultStream(){
+        return StreamSupport.stream(filterResultSpliterator(), false);
+    }
+
+    /**
+     * Returns possibly parallel {@link Stream} over elements of filter result list.
+     *
+     * @return {@link Stream} over filter result list
+     * @see #filterResultSpliterator()
+     */
+    @NotNull
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public Stream<mClass> filterResultParallelStream(){
+        return StreamSupport.stream(filterResultSpliterator(), true);
+    }
+
+    /**
+     * Create immutable snapshot of content and filter result list. Snapshot shares blocks of
+     * filter result with this list until they are changed, so it may be read from any thread
+     * without locks while this list is changed. Snapshot must be created on thread which
+     * changes this list.
+     * <p>
+     * References to elements are copied once per change of content: snapshots created
+     * without changes of content between them, e.g. after every change of filter string,
+     * share one copy.
+     *
+     * @return Snapshot of this list
+     */
+    @NotNull
+    public Snapshot<mClass> snapshot() {
+        if (SnapshotElements == null)
+            SnapshotElements = toArray();
+        return new Snapshot<>(SnapshotElements, FilterResult.snapshot(), isRanked() ? getRankedPositions() : null,
+                FilterString);
+    }
+
+    /**
+     * Save content, filter string, filter result and search indexes into compact binary
+     * file, which is restored by {@link #load(File, ElementSerializer)}. Filter itself is
+     * not saved.
+     *
+     * @param file File to write
+     * @param serializer Writer of elements
+     * @throws IOException if file can't be written
+     * @throws IllegalStateException if batch is started
+     */
+    public void save(@NotNull File file, @NotNull ElementSerializer<? super mClass> serializer) throws IOException {
+        if (BatchDepth > 0)
+            throw new IllegalStateException("save() called inside batch");
+        DataOutputStream Output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            int Size = size();
+            Output.writeInt(FILE_MAGIC);
+            Output.writeInt(FILE_VERSION);
+            Output.writeInt(Size);
+            Output.writeInt((SearchKeys != null ? FILE_FLAG_SEARCH_KEYS : 0) | (Trigrams != null ? FILE_FLAG_TRIGRAMS : 0));
+            writeString(Output, FilterString);
+            Output.writeInt(ScannedSize);
+            for (long Word : FilterResult.toBitmap())
+                Output.writeLong(Word);
+            if (SearchKeys != null)
+                for (int i = 0; i < Size; i++)
+                    writeString(Output, SearchKeys.get(i));
+            if (Trigrams != null)
+                Trigrams.write(Output);
+            for (int i = 0; i < Size; i++)
+                serializer.write(get(i), Output);
+        } finally {
+            Output.close();
+        }
+    }
+
+    /**
+     * Replace content, filter string and filter result with ones saved by
+     * {@link #save(File, ElementSerializer)}. File is memory-mapped and filter result is
+     * restored without calling filter, so list must have the same filter which was set when
+     * file was saved. Saved search keys and trigram index are used if the same indexes are
+     * enabled in this list, otherwise indexes are rebuilt.
+     *
+     * @param file File to read
+     * @param serializer Reader of elements
+     * @throws IOException if file can't be read or has wrong format
+     */
+    public void load(@NotNull File file, @NotNull ElementSerializer<? extends mClass> serializer) throws IOException {
+        RandomAccessFile mFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel Channel = mFile.getChannel();
+            load(Channel.map(FileChannel.MapMode.READ_ONLY, 0, Channel.size()), serializer);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Unexpected end of file: " + file);
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private void load(@NotNull ByteBuffer in, @NotNull ElementSerializer<? extends mClass> serializer) throws IOException {
+        if (in.getInt() != FILE_MAGIC || in.getInt() != FILE_VERSION)
+            throw new IOException("Unsupported file format");
+        int Size = in.getInt();
+        int Flags = in.getInt();
+        if (Size < 0)
+            throw new IOException("Illegal size: " + Size);
+        String mFilterString = readString(in);
+        int mScannedSize = in.getInt();
+        if (mScannedSize < 0 || mScannedSize > Size)
+            throw new IOException("Illegal scanned size: " + mScannedSize + ", size: " + Size);
+        int BitmapLength = (int) ((Size + 63L) >>> 6);
+        if (in.remaining() < (long) BitmapLength << 3)
+            throw new EOFException("Filter result is truncated");
+        long[] Bitmap = new long[BitmapLength];
+        in.asLongBuffer().get(Bitmap);
+        in.position(in.position() + (BitmapLength << 3));
+        if (BitmapLength > 0 && mScannedSize < BitmapLength << 6) {
+            int Word = mScannedSize >>> 6;
+            if ((Bitmap[Word] & (-1L << mScannedSize)) != 0)
+                throw new IOException("Filter result has matches beyond scanned size");
+            for (Word++; Word < BitmapLength; Word++)
+                if (Bitmap[Word] != 0)
+                    throw new IOException("Filter result has matches beyond scanned size");
+        }
+        ArrayList<String> Keys = null;
+        if ((Flags & FILE_FLAG_SEARCH_KEYS) != 0) {
+            Keys = new ArrayList<>(Size);
+            for (int i = 0; i < Size; i++)
+                Keys.add(readString(in));
+        }
+        TrigramIndex mTrigrams = (Flags & FILE_FLAG_TRIGRAMS) != 0 ? TrigramIndex.read(in, Size) : null;
+        DataInputStream Input = new DataInputStream(new ByteBufferInputStream(in));
+        ArrayList<mClass> Items = new ArrayList<>(Size);
+        for (int i = 0; i < Size; i++)
+            Items.add(serializer.read(Input));
+
+        FilterGeneration.incrementAndGet();
+        onContentChanged();
+        FilterResultCache.clear();
+        super.clear();
+        super.addAll(Items);
+        FilterString = mFilterString;
+        if (KeyExtractor == null)
+            SearchKeys = null;
+        else if (Keys != null)
+            SearchKeys = Keys;
+        else {
+            SearchKeys = new ArrayList<>(Size);
+            for (mClass Item : Items)
+                SearchKeys.add(KeyExtractor.getSearchKey(Item));
+        }
+        if (Trigrams != null) {
+            if (mTrigrams != null && (SearchKeys != null) == (Keys != null))
+                Trigrams = mTrigrams;
+            else
+                rebuildTrigramIndex();
+        }
+        if (isAllMatches(Filter, FilterString)) {
+            FilterResult.fill(Size, null, null);
+            ScannedSize = Size;
+        } else {
+            FilterResult.fill(Size, Bitmap);
+            ScannedSize = Math.min(mScannedSize, Size);
+            if (LazyFilterWindow == 0)
+                scanFilterResultSilently(Integer.MAX_VALUE);
+        }
+        if (BatchDepth == 0)
+            triggerListenersDataSetChanged();
+    }
+
+    private static void writeString(@NotNull DataOutput out, @Nullable String s) throws IOException {
+        if (s == null)
+            out.writeInt(-1);
+        else {
+            byte[] Bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(Bytes.length);
+            out.write(Bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(@NotNull ByteBuffer in) throws IOException {
+        int Length = in.getInt();
+        if (Length == -1)
+            return null;
+        if (Length < 0)
+            throw new IOException("Illegal string length: " + Length);
+        if (Length > in.remaining())
+            throw new EOFException("String is truncated");
+        byte[] Bytes = new byte[Length];
+        in.get(Bytes);
+        return new String(Bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check again element which was changed in place, e.g. its fields were changed without
+     * calling {@link #set(int, Object)}. Search keys of element are recomputed as well.
+     *
+     * @param index Index of the element in real data set
+     * @throws IndexOutOfBoundsException if index is out of real data set range
+     */
+    public void refilter(int index) {
+        refilter(index, index + 1);
+    }
+
+    /**
+     * Check again elements in range [fromIndex, toIndex) which were changed in place.
+     * Search keys of elements are recomputed as well.
+     *
+     * @param fromIndex Index of the first element in real data set, inclusive
+     * @param toIndex Index of the last element in real data set, exclusive
+     * @throws IndexOutOfBoundsException if range is out of real data set range
+     * @see #refilter(int)
+     */
+    public void refilter(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex
+                    + ", size: " + size());
+        onContentChanged();
+        for (int i = fromIndex; i < toIndex; i++)
+            setKey(i);
+        if (BatchDepth == 0)
+            for (int i = fromIndex; i < toIndex; i++)
+                setMatch(i);
+        flushNotifications();
+    }
+
     /**
      * Get previously set {@link FilterInterface}
      *
@@ -380,10 +818,57 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
      *
      * @param filter {@link FilterInterface} or null
      * @see FilterInterface#filter(Object, String)
+     * @see MonotonicFilterInterface
      */
     public void setFilter(@Nullable FilterInterface<? super mClass> filter) {
-        Filter = filter;
-        filterContent();
+        FilterGeneration.incrementAndGet();
+        FilterResultsStack.clear();
+        if (BatchDepth > 0) {
+            Filter = filter;
+            BatchFilterChanged = true;
+        } else {
+            long[] OldFilterResult = getNotificationBitmap();
+            changeFilter(filter, FilterString);
+            notifyFilterResultChanges(OldFilterResult);
+        }
+    }
+
+    /**
+     * Set {@link QueryFilterInterface} and query according which content will be filtered.
+     * Query is compiled once into {@link QueryMatcher}, which checks elements without
+     * filter string. Filter string is kept, but ignored while query filter is set, so query
+     * is applied even with empty filter string. Results of equal queries of the same filter
+     * are cached like results of filter strings.
+     *
+     * @param filter {@link QueryFilterInterface} or null
+     * @param query Query or null if every element should pass
+     * @see #setFilter(FilterInterface)
+     */
+    public <mQuery> void setQueryFilter(@Nullable QueryFilterInterface<? super mClass, mQuery> filter,
+                                        @Nullable mQuery query) {
+        FilterGeneration.incrementAndGet();
+        FilterResultsStack.clear();
+        FilterInterface<? super mClass> NewFilter = null;
+        if (filter != null && query != null)
+            NewFilter = new CompiledQueryFilter<>(filter, query);
+        if (BatchDepth > 0) {
+            Filter = NewFilter;
+            BatchFilterChanged = true;
+        } else {
+            long[] OldFilterResult = getNotificationBitmap();
+            changeFilter(NewFilter, FilterString);
+            notifyFilterResultChanges(OldFilterResult);
+        }
+    }
+
+    /**
+     * Get query set by {@link #setQueryFilter(QueryFilterInterface, Object)}.
+     *
+     * @return Query or null if query filter is not set
+     */
+    @Nullable
+    public Object getQuery() {
+        return Filter instanceof CompiledQueryFilter ? ((CompiledQueryFilter<?, ?>) Filter).Query : null;
     }
 
     /**
@@ -397,86 +882,1643 @@ public class FilterableArrayList <mClass>extends ArrayList<mClass> {
 
     /**
      * Set filter string according which content will be filtered.
+     * <p>
+     * If filter is {@link MonotonicFilterInterface} and new filter string narrows previous
+     * one, only current filter result is rechecked. Results of several previous filter
+     * strings are kept until content is changed, so returning to them doesn't need filtering.
+     * Setting the same filter string again refilters all elements, so changed state of filter
+     * is applied.
      *
      * @param filterString String or null
      * @see FilterInterface#filter(Object, String)
      */
     public void setFilterString(@Nullable String filterString) {
-        FilterString = filterString;
-        filterContent();
+        FilterGeneration.incrementAndGet();
+        if (BatchDepth > 0) {
+            FilterString = filterString;
+            FilterResultsStack.clear();
+            BatchFilterChanged = true;
+        } else if (Filter instanceof MonotonicFilterInterface && LazyFilterWindow == 0) {
+            long[] OldFilterResult = getNotificationBitmap();
+            refilterIncrementally(filterString);
+            notifyFilterResultChanges(OldFilterResult);
+        }
+        else {
+            long[] OldFilterResult = getNotificationBitmap();
+            changeFilter(Filter, filterString);
+            notifyFilterResultChanges(OldFilterResult);
+        }
     }
 
-    private int findFilterResultChildPositionByRealPosition(int position){
-        int i = 0;
-        for (DataHolder o : FilterResult) {
-            if (o.position == position)
-                return i;
-            i++;
-        }
-        return -1;
+    /**
+     * Get previously set {@link SearchKeyExtractor}.
+     *
+     * @return Previously set {@link SearchKeyExtractor} or null
+     */
+    @Nullable
+    public SearchKeyExtractor<? super mClass> getSearchKeyExtractor() {
+        return KeyExtractor;
     }
 
-    private void addFilterResultItem(DataHolder newItem){
-        ListIterator<DataHolder> mIterator = FilterResult.listIterator();
-        if (mIterator.hasNext()) {
-            for (DataHolder mData = mIterator.next(); mIterator.hasNext(); mData = mIterator.next()) {
-                if (newItem.position < mData.position) {
-                    mIterator.previous();
-                    mIterator.add(newItem);
-                    return;
-                }
-            }
+    /**
+     * Set {@link SearchKeyExtractor} which search keys are passed to
+     * {@link SearchKeyFilterInterface} instead of elements. Key of every element is
+     * computed once when element is added or replaced, not on every filtering.
+     *
+     * @param extractor {@link SearchKeyExtractor} or null
+     */
+    public void setSearchKeyExtractor(@Nullable SearchKeyExtractor<? super mClass> extractor) {
+        KeyExtractor = extractor;
+        if (extractor == null)
+            SearchKeys = null;
+        else {
+            SearchKeys = new ArrayList<>(size());
+            for (mClass Item : this)
+                SearchKeys.add(extractor.getSearchKey(Item));
         }
-        FilterResult.add(newItem);
+        if (Trigrams != null)
+            rebuildTrigramIndex();
+        FilterResultsStack.clear();
+        FilterResultCache.clear();
+        if (BatchDepth > 0)
+            BatchFilterChanged = true;
+        else
+            filterContent();
     }
 
-    private void removeFilterResultItem(int Position){
-        for (DataHolder mData : FilterResult)
-            if (mData.position == Position){
-                FilterResult.remove(mData);
-                return;
-            }
+    /**
+     * Get search key of element computed by {@link SearchKeyExtractor}.
+     *
+     * @param index Index of the element in real data set
+     * @return Search key
+     * @throws IllegalStateException if {@link SearchKeyExtractor} is not set
+     */
+    @Nullable
+    public String getSearchKey(int index) {
+        if (SearchKeys == null)
+            throw new IllegalStateException("SearchKeyExtractor is not set");
+        return SearchKeys.get(index);
     }
 
-    private void filterContent(){
-        FilterResult.clear();
-        int i = 0;
-        if (Filter == null || FilterString == null || FilterString.equals("")) {
-            for (mClass Item : this) {
-                FilterResult.add(new DataHolder(i, Item));
-            }
-        } else{
-            for (mClass Item : this) {
-                if (Filter.filter(Item, FilterString)) {
-                    FilterResult.add(new DataHolder(i, Item));
-                    i++;
-                }
-            }
-        }
+    /**
+     * Get count of filter results which are searched by full filtering in lazy mode.
+     *
+     * @return Count of filter results or 0 if lazy mode is disabled
+     * @see #setLazyFilterWindow(int)
+     */
+    public int getLazyFilterWindow() {
+        return LazyFilterWindow;
     }
 
     /**
-     * Interface for filter.
+     * Enable lazy mode, where filtering of whole content stops when passed count of filter
+     * results is found. The rest of content is checked on demand when
+     * {@link #filterResultGet(int)} is called for not found yet index or
+     * {@link #scanFilterResult(int)} is called, and found elements are reported as inserted
+     * at the end of filter result list. Other methods of filter result list work only with
+     * found elements. Results of previous filter strings are not cached in lazy mode.
+     *
+     * @param window Count of filter results or 0 to disable lazy mode
+     * @see #hasMoreFilterResults()
+     * @see #estimateFilterResultSize()
      */
-    public interface FilterInterface<mClass>{
-        /**
-         * Called to decide if Data pass the filter. If returns <tt>true</tt> for Data,
-         * it will appear in result list, otherwise it will not.
-         *
-         * @param Data The object in question
-         * @param FilterString The string according which Data should be filtered
-         * @return Is Data should appear in result list
-         */
-        boolean filter(mClass Data, String FilterString);
+    public void setLazyFilterWindow(int window) {
+        if (window < 0)
+            throw new IllegalArgumentException("Illegal window: " + window);
+        LazyFilterWindow = window;
+        if (window > 0) {
+            FilterResultsStack.clear();
+            FilterResultCache.clear();
+        } else if (BatchDepth > 0)
+            BatchFilterChanged = true;
+        else
+            scanFilterResult(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Check if some elements were not checked by filter yet in lazy mode.
+     *
+     * @return Is there are not checked elements
+     * @see #setLazyFilterWindow(int)
+     */
+    public boolean hasMoreFilterResults() {
+        return ScannedSize < size();
+    }
+
+    /**
+     * Estimate size of filter result list as if all elements were checked. Size is
+     * extrapolated from share of filter results among checked elements.
+     *
+     * @return Estimated size of filter result list
+     * @see #setLazyFilterWindow(int)
+     */
+    public int estimateFilterResultSize() {
+        int Found = FilterResult.matchCount();
+        if (ScannedSize >= size())
+            return Found;
+        if (ScannedSize == 0)
+            return size();
+        return Found + (int) ((long) Found * (size() - ScannedSize) / ScannedSize);
+    }
+
+    /**
+     * Check not checked elements in lazy mode until filter result list has passed size
+     * or all elements are checked. Found elements are reported as inserted.
+     *
+     * @param filterResultSize Required size of filter result list
+     * @see #setLazyFilterWindow(int)
+     */
+    public void scanFilterResult(int filterResultSize) {
+        int Position = FilterResult.matchCount();
+        notifyInserted(Position, scanFilterResultSilently(filterResultSize));
+        flushNotifications();
+    }
+
+    /**
+     * Get maximum size of filter result list in ranked mode.
+     *
+     * @return Maximum size or 0 if ranked mode is disabled
+     * @see #setRankedFilterLimit(int)
+     */
+    public int getRankedFilterLimit() {
+        return RankedLimit;
+    }
+
+    /**
+     * Enable ranked mode, where filter result list contains only passed count of elements
+     * with the best scores, ordered from the best score, if {@link ScoringFilterInterface}
+     * is set and filter string is not empty. Equal scores are ordered by real positions.
+     * Best elements are selected by bounded heap without sorting whole filter result, and
+     * they are selected again on first access after content or filter was changed. In ranked
+     * mode changes of filter result list are reported by
+     * {@link FilterResultListener#onFilterResultDataSetChanged(FilterableArrayList)}.
+     *
+     * @param limit Maximum size of filter result list or 0 to disable ranked mode
+     */
+    public void setRankedFilterLimit(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Illegal limit: " + limit);
+        long[] OldFilterResult = getNotificationBitmap();
+        RankedLimit = limit;
+        RankedPositions = null;
+        notifyFilterResultChanges(OldFilterResult);
+    }
+
+    /**
+     * Check if trigram index is enabled.
+     *
+     * @return Is trigram index enabled
+     * @see #setTrigramIndexEnabled(boolean)
+     */
+    public boolean isTrigramIndexEnabled() {
+        return Trigrams != null;
+    }
+
+    /**
+     * Enable or disable index of trigrams (substrings of 3 chars) of elements keys. Keys are
+     * search keys if {@link SearchKeyExtractor} is set, otherwise results of
+     * {@link Object#toString()}. When {@link SubstringFilterInterface} is set and filter string
+     * has at least 3 chars, only elements which keys contain all trigrams of filter string are
+     * checked by filter. Index is updated on every change of content.
+     *
+     * @param enabled Is trigram index enabled
+     */
+    public void setTrigramIndexEnabled(boolean enabled) {
+        if (enabled == (Trigrams != null))
+            return;
+        if (enabled)
+            rebuildTrigramIndex();
+        else
+            Trigrams = null;
+    }
+
+    /**
+     * Get maximum memory which may be used by cache of filter results.
+     *
+     * @return Maximum count of bytes or 0 if cache is disabled
+     */
+    public long getFilterResultCacheSize() {
+        return FilterResultCacheSize;
+    }
+
+    /**
+     * Set maximum memory which may be used by cache of filter results. When filter or filter
+     * string is changed, previous filter result is cached, so switching back to them doesn't
+     * need filtering. Least recently used results are evicted when cache exceeds its size.
+     * <p>
+     * Cached results are kept up to date on every change of content outside of batch, which
+     * costs one {@link FilterInterface#filter(Object, String)} call per cached result for each
+     * added or replaced element. Batches of changes clear cache.
+     * <p>
+     * Cached results are keyed by filter identity and filter string, so a filter which
+     * changes its own state must not rely on cache: call {@link #clearFilterResultCache()}
+     * after changing it, or keep cache disabled.
+     *
+     * @param size Maximum count of bytes or 0 to disable cache
+     */
+    public void setFilterResultCacheSize(long size) {
+        FilterResultCacheSize = size;
+        trimFilterResultCache();
+    }
+
+    /**
+     * Remove all cached filter results.
+     *
+     * @see #setFilterResultCacheSize(long)
+     */
+    public void clearFilterResultCache() {
+        FilterResultCache.clear();
+    }
+
+    /**
+     * Add listener to be notified about changes of filter result list.
+     *
+     * @param listener Listener to add
+     */
+    public void addFilterResultListener(@NotNull FilterResultListener<mClass> listener) {
+        Listeners.add(0, listener);
+    }
+
+    /**
+     * Remove previously added listener.
+     *
+     * @param listener Listener to remove
+     */
+    public void removeFilterResultListener(@NotNull FilterResultListener<mClass> listener) {
+        Listeners.remove(listener);
+    }
+
+    /**
+     * Remove all previously added listeners.
+     */
+    public void removeAllFilterResultListeners() {
+        Listeners.clear();
     }
 
-    class DataHolder{
-        int position;
-        mClass Data;
+    /**
+     * Start batch of changes. Until matching {@link #endBatch()} is called, filter result is
+     * not updated by changes of content, filter or filter string, and it must not be accessed.
+     * Batches may be nested.
+     *
+     * @see #mutate(BatchOperation)
+     */
+    public void beginBatch() {
+        if (BatchDepth++ == 0)
+            BatchContentVersion = ContentVersion;
+    }
+
+    /**
+     * Finish batch of changes started by {@link #beginBatch()}. When the outermost batch is
+     * finished, content is filtered once if it or the filter was changed during the batch.
+     *
+     * @throws IllegalStateException if no batch was started
+     */
+    public void endBatch() {
+        if (BatchDepth == 0)
+            throw new IllegalStateException("endBatch() called without beginBatch()");
+        if (--BatchDepth == 0) {
+            if (BatchContentVersion != ContentVersion) {
+                BatchFilterChanged = false;
+                fillFilterResult();
+                triggerListenersDataSetChanged();
+            } else if (BatchFilterChanged) {
+                BatchFilterChanged = false;
+                filterContent();
+            }
+        }
+    }
+
+    /**
+     * Is batch of changes started.
+     *
+     * @return True if {@link #beginBatch()} was called more times than {@link #endBatch()}
+     */
+    public boolean isInBatch() {
+        return BatchDepth > 0;
+    }
+
+    /**
+     * Perform changes of content as single batch.
+     *
+     * @param operation Operation which changes passed list
+     * @see #beginBatch()
+     */
+    public void mutate(@NotNull BatchOperation<mClass> operation) {
+        beginBatch();
+        try {
+            operation.apply(this);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Set {@link FilterInterface} and filter content on passed executor. Result is published
+     * on {@link Looper} of calling thread if content was not changed during filtering,
+     * otherwise filtering is restarted. Filtering is cancelled if another filter or filter
+     * string is set before it is published.
+     *
+     * @param filter {@link FilterInterface} or null
+     * @param executor Executor to filter content on
+     * @param callback Callback to be notified when result is published or null
+     * @throws IllegalStateException if calling thread has no {@link Looper}
+     * @see #setFilter(FilterInterface)
+     */
+    public void setFilterAsync(@Nullable FilterInterface<? super mClass> filter,
+                               @NotNull Executor executor, @Nullable FilterCallback<mClass> callback) {
+        filterAsync(filter, FilterString, executor, getLooperExecutor(), callback);
+    }
+
+    /**
+     * Set filter string and filter content on passed executor. Result is published
+     * on {@link Looper} of calling thread if content was not changed during filtering,
+     * otherwise filtering is restarted. Filtering is cancelled if another filter or filter
+     * string is set before it is published.
+     *
+     * @param filterString String or null
+     * @param executor Executor to filter content on
+     * @param callback Callback to be notified when result is published or null
+     * @throws IllegalStateException if calling thread has no {@link Looper}
+     * @see #setFilterString(String)
+     */
+    public void setFilterStringAsync(@Nullable String filterString, @NotNull Executor executor,
+                                     @Nullable FilterCallback<mClass> callback) {
+        filterAsync(Filter, filterString, executor, getLooperExecutor(), callback);
+    }
+
+    /**
+     * Same as {@link #setFilterStringAsync(String, Executor, FilterCallback)} but result is
+     * published on callbackExecutor. List must be changed only from tasks of callbackExecutor
+     * while filtering is in progress.
+     *
+     * @param filterString String or null
+     * @param executor Executor to filter content on
+     * @param callbackExecutor Executor to publish result on
+     * @param callback Callback to be notified when result is published or null
+     */
+    public void setFilterStringAsync(@Nullable String filterString, @NotNull Executor executor,
+                                     @NotNull Executor callbackExecutor,
+                                     @Nullable FilterCallback<mClass> callback) {
+        filterAsync(Filter, filterString, executor, callbackExecutor, callback);
+    }
+
+    /**
+     * Cancel filtering started by {@link #setFilterStringAsync} or {@link #setFilterAsync}.
+     * Result of cancelled filtering will not be published.
+     */
+    public void cancelAsyncFilter() {
+        FilterGeneration.incrementAndGet();
+    }
+
+    private void filterAsync(@Nullable final FilterInterface<? super mClass> filter,
+                             @Nullable final String filterString, @NotNull final Executor executor,
+                             @NotNull final Executor callbackExecutor,
+                             @Nullable final FilterCallback<mClass> callback){
+        final int Generation = FilterGeneration.incrementAndGet();
+        final int Version = ContentVersion;
+        final Object[] Snapshot = toArray();
+        final Object[] SearchKeysSnapshot = SearchKeys != null && filter instanceof SearchKeyFilterInterface
+                ? SearchKeys.toArray() : null;
+        final ForkJoinPool Pool = getFilterPool(Snapshot.length);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final FilterIndex Result = new FilterIndex();
+                FilterIndex.PositionFilter mFilter = null;
+                if (!isAllMatches(filter, filterString)) {
+                    mFilter = new FilterIndex.PositionFilter() {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public boolean matches(int position) {
+                            if ((position & 255) == 0 && FilterGeneration.get() != Generation)
+                                throw new CancellationException();
+                            if (SearchKeysSnapshot != null)
+                                return ((SearchKeyFilterInterface<?>) filter).filterSearchKey(
+                                        (String) SearchKeysSnapshot[position], filterString);
+                            return filter.filter((mClass) Snapshot[position], filterString);
+                        }
+                    };
+                }
+                try {
+                    Result.fill(Snapshot.length, mFilter, Pool);
+                } catch (CancellationException e) {
+                    return;
+                }
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (FilterGeneration.get() != Generation)
+                            return;
+                        if (ContentVersion != Version) {
+                            filterAsync(filter, filterString, executor, callbackExecutor, callback);
+                            return;
+                        }
+                        long[] OldFilterResult = getNotificationBitmap();
+                        cacheFilterResult();
+                        Filter = filter;
+                        FilterString = filterString;
+                        FilterResult = Result;
+                        ScannedSize = Snapshot.length;
+                        FilterResultsStack.clear();
+                        notifyFilterResultChanges(OldFilterResult);
+                        if (callback != null)
+                            callback.onFilterComplete(FilterableArrayList.this);
+                    }
+                });
+            }
+        });
+    }
+
+    @NotNull
+    private static Executor getLooperExecutor(){
+        Looper mLooper = Looper.myLooper();
+        if (mLooper == null)
+            throw new IllegalStateException("Calling thread has no Looper");
+        final Handler mHandler = new Handler(mLooper);
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mHandler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Get previously set pool for parallel filtering.
+     *
+     * @return Previously set {@link ForkJoinPool} or null
+     */
+    @Nullable
+    public ForkJoinPool getParallelFilterPool() {
+        return ParallelFilterPool;
+    }
+
+    /**
+     * Set pool in which content will be filtered in parallel. Content is split into chunks
+     * which are checked by {@link FilterInterface} concurrently, so filter must be thread-safe.
+     * Filtering of less than {@link #getParallelFilterThreshold()} elements is always performed
+     * on calling thread.
+     *
+     * @param pool {@link ForkJoinPool} or null to filter only on calling thread
+     */
+    public void setParallelFilterPool(@Nullable ForkJoinPool pool) {
+        ParallelFilterPool = pool;
+    }
+
+    /**
+     * Get minimum count of checked elements to filter them in parallel.
+     *
+     * @return Minimum count of elements
+     */
+    public int getParallelFilterThreshold() {
+        return ParallelFilterThreshold;
+    }
+
+    /**
+     * Set minimum count of checked elements to filter them in parallel.
+     *
+     * @param threshold Minimum count of elements
+     * @see #setParallelFilterPool(ForkJoinPool)
+     */
+    public void setParallelFilterThreshold(int threshold) {
+        ParallelFilterThreshold = threshold;
+    }
+
+    private void refilterIncrementally(@Nullable String filterString){
+        MonotonicFilterInterface<?> mFilter = (MonotonicFilterInterface<?>) Filter;
+        if (isAllMatches(FilterString) ? isAllMatches(filterString) : FilterString.equals(filterString)) {
+            FilterResultsStack.clear();
+            FilterString = filterString;
+            fillFilterResult();
+            return;
+        }
+        FilterIndex CachedResult = FilterResultCache.remove(new FilterResultCacheKey(Filter, filterString));
+        if (CachedResult != null) {
+            FilterResultsStack.clear();
+            cacheFilterResult();
+            FilterString = filterString;
+            FilterResult = CachedResult;
+            return;
+        }
+        if (isNarrowing(mFilter, FilterString, filterString)) {
+            if (FilterResultsStack.size() == FILTER_RESULTS_STACK_DEPTH)
+                FilterResultsStack.remove(0);
+            FilterResultsStack.add(new CachedFilterResult(FilterString, new FilterIndex(FilterResult)));
+            FilterString = filterString;
+            narrowFilterResult();
+            return;
+        }
+        for (int i = FilterResultsStack.size() - 1; i >= 0; i--) {
+            CachedFilterResult Cached = FilterResultsStack.get(i);
+            if (isAllMatches(Cached.FilterString) ? isAllMatches(filterString)
+                    : Cached.FilterString.equals(filterString)) {
+                FilterResultsStack.subList(i, FilterResultsStack.size()).clear();
+                cacheFilterResult();
+                FilterResult = Cached.Result;
+                FilterString = filterString;
+                return;
+            }
+            if (isNarrowing(mFilter, Cached.FilterString, filterString)) {
+                FilterResultsStack.subList(i + 1, FilterResultsStack.size()).clear();
+                FilterResult = new FilterIndex(Cached.Result);
+                FilterString = filterString;
+                narrowFilterResult();
+                return;
+            }
+        }
+        FilterResultsStack.clear();
+        cacheFilterResult();
+        FilterString = filterString;
+        fillFilterResult();
+    }
+
+    /**
+     * Replace filter and filter string and update filter result. Current filter result is
+     * cached and cached result for new filter is reused if possible. Setting the same filter
+     * and filter string again always refilters, so changed state of filter is applied.
+     */
+    private void changeFilter(@Nullable FilterInterface<? super mClass> filter, @Nullable String filterString){
+        FilterResultCacheKey NewKey = new FilterResultCacheKey(filter, filterString);
+        if (NewKey.equals(new FilterResultCacheKey(Filter, FilterString))) {
+            fillFilterResult();
+            return;
+        }
+        cacheFilterResult();
+        Filter = filter;
+        FilterString = filterString;
+        FilterIndex CachedResult = FilterResultCache.remove(NewKey);
+        if (CachedResult != null)
+            FilterResult = CachedResult;
+        else
+            fillFilterResult();
+    }
+
+    /**
+     * Move current filter result into cache. Caller must replace filter result after it.
+     */
+    private void cacheFilterResult(){
+        if (FilterResultCacheSize <= 0 || LazyFilterWindow > 0 || isAllMatches(Filter, FilterString))
+            return;
+        FilterResultCache.put(new FilterResultCacheKey(Filter, FilterString), FilterResult);
+        FilterResult = new FilterIndex();
+        trimFilterResultCache();
+    }
+
+    private void trimFilterResultCache(){
+        long Size = 0;
+        for (FilterIndex Cached : FilterResultCache.values())
+            Size += Cached.memorySize();
+        Iterator<FilterIndex> mIterator = FilterResultCache.values().iterator();
+        while (Size > FilterResultCacheSize && mIterator.hasNext()) {
+            Size -= mIterator.next().memorySize();
+            mIterator.remove();
+        }
+    }
+
+    private void onContentChanged(){
+        SnapshotElements = null;
+        FilterResultsStack.clear();
+        ContentVersion++;
+        if (BatchDepth > 0)
+            FilterResultCache.clear();
+    }
+
+    private static boolean isNarrowing(@NotNull MonotonicFilterInterface<?> filter,
+                                       @Nullable String wide, @Nullable String narrow){
+        if (isAllMatches(wide))
+            return true;
+        if (isAllMatches(narrow))
+            return false;
+        return filter.isNarrowing(wide, narrow);
+    }
+
+    private static boolean isAllMatches(@Nullable String filterString){
+        return filterString == null || filterString.equals("");
+    }
+
+    /**
+     * Check if every element passes filter with filter string. Query filter ignores filter
+     * string, so it is applied even with empty one.
+     */
+    private static boolean isAllMatches(@Nullable FilterInterface<?> filter, @Nullable String filterString){
+        return filter == null || !(filter instanceof CompiledQueryFilter) && isAllMatches(filterString);
+    }
+
+    private void narrowFilterResult(){
+        FilterResult.retain(createPositionFilter(), getFilterPool(FilterResult.matchCount()));
+    }
+
+    @Nullable
+    private ForkJoinPool getFilterPool(int checksCount){
+        return checksCount >= ParallelFilterThreshold ? ParallelFilterPool : null;
+    }
+
+    @NotNull
+    private FilterIndex.PositionFilter createPositionFilter(){
+        final FilterInterface<? super mClass> mFilter = Filter;
+        final String mFilterString = FilterString;
+        return new FilterIndex.PositionFilter() {
+            @Override
+            public boolean matches(int position) {
+                return isMatches(mFilter, mFilterString, position);
+            }
+        };
+    }
+
+    private void setMatch(int index){
+        for (Map.Entry<FilterResultCacheKey, FilterIndex> Cached : FilterResultCache.entrySet())
+            Cached.getValue().set(index, Cached.getKey().matches(index));
+        if (index >= ScannedSize)
+            return;
+        boolean matches = isMatches(index);
+        if (Listeners.isEmpty()) {
+            FilterResult.set(index, matches);
+            return;
+        }
+        boolean Matched = FilterResult.get(index);
+        FilterResult.set(index, matches);
+        int Position = FilterResult.rank(index);
+        if (Matched && matches)
+            notifyChanged(Position, 1);
+        else if (Matched)
+            notifyRemoved(Position, 1);
+        else if (matches)
+            notifyInserted(Position, 1);
+    }
+
+    private void insertMatch(int index){
+        for (Map.Entry<FilterResultCacheKey, FilterIndex> Cached : FilterResultCache.entrySet())
+            Cached.getValue().insert(index, Cached.getKey().matches(index));
+        boolean matches = index <= ScannedSize && isMatches(index);
+        if (index <= ScannedSize)
+            ScannedSize++;
+        FilterResult.insert(index, matches);
+        if (matches && !Listeners.isEmpty())
+            notifyInserted(FilterResult.rank(index), 1);
+    }
+
+    private void removeMatch(int index){
+        for (FilterIndex Cached : FilterResultCache.values())
+            Cached.remove(index);
+        if (index < ScannedSize)
+            ScannedSize--;
+        int Position = Listeners.isEmpty() ? 0 : FilterResult.rank(index);
+        if (FilterResult.remove(index))
+            notifyRemoved(Position, 1);
+    }
+
+    private void removeMatches(@NotNull long[] removed){
+        for (FilterIndex Cached : FilterResultCache.values())
+            Cached.removeAll(removed);
+        int RemovedScanned = 0;
+        for (int w = 0; w << 6 < ScannedSize; w++)
+            RemovedScanned += Long.bitCount(ScannedSize - (w << 6) >= 64 ? removed[w]
+                    : removed[w] & ((1L << (ScannedSize - (w << 6))) - 1));
+        ScannedSize -= RemovedScanned;
+        long[] Matched = Listeners.isEmpty() ? null : FilterResult.toBitmap();
+        FilterResult.removeAll(removed);
+        if (Matched == null)
+            return;
+        int Position = 0;
+        for (int w = 0; w < Matched.length; w++) {
+            long Kept = Matched[w] & ~removed[w];
+            for (long Bits = Matched[w] & removed[w]; Bits != 0; Bits &= Bits - 1) {
+                int Bit = Long.numberOfTrailingZeros(Bits);
+                notifyRemoved(Position + Long.bitCount(Kept & ((1L << Bit) - 1)), 1);
+            }
+            Position += Long.bitCount(Kept);
+        }
+    }
+
+    /**
+     * @return Bitmap of current match flags if there are listeners to notify, otherwise null
+     */
+    @Nullable
+    private long[] getNotificationBitmap(){
+        if (Listeners.isEmpty())
+            return null;
+        return isRanked() ? RANKED_NOTIFICATION_BITMAP : FilterResult.toBitmap();
+    }
+
+    /**
+     * Notify listeners about difference between passed and current match flags of the same
+     * content.
+     *
+     * @param oldFilterResult Bitmap returned by {@link #getNotificationBitmap()} before
+     *                        content was filtered
+     */
+    private void notifyFilterResultChanges(@Nullable long[] oldFilterResult){
+        if (oldFilterResult == null)
+            return;
+        if (oldFilterResult == RANKED_NOTIFICATION_BITMAP || isRanked()) {
+            notifyDataSetChanged();
+            flushNotifications();
+            return;
+        }
+        long[] NewFilterResult = FilterResult.toBitmap();
+        int Position = 0;
+        for (int w = 0; w < NewFilterResult.length; w++) {
+            long OldWord = oldFilterResult[w];
+            long NewWord = NewFilterResult[w];
+            if (OldWord == NewWord) {
+                Position += Long.bitCount(NewWord);
+                continue;
+            }
+            for (long Bits = OldWord | NewWord; Bits != 0; Bits &= Bits - 1) {
+                long Bit = Bits & -Bits;
+                if ((OldWord & Bit) == 0)
+                    notifyInserted(Position++, 1);
+                else if ((NewWord & Bit) == 0)
+                    notifyRemoved(Position, 1);
+                else
+                    Position++;
+            }
+        }
+        flushNotifications();
+    }
+
+    private void notifyInserted(int position, int count){
+        if (Listeners.isEmpty() || count == 0)
+            return;
+        if (isRanked()) {
+            notifyDataSetChanged();
+            return;
+        }
+        if (PendingNotification == NOTIFICATION_INSERTED && position >= PendingPosition
+                && position <= PendingPosition + PendingCount) {
+            PendingCount += count;
+            PendingPosition = Math.min(position, PendingPosition);
+            return;
+        }
+        flushNotifications();
+        PendingNotification = NOTIFICATION_INSERTED;
+        PendingPosition = position;
+        PendingCount = count;
+    }
+
+    private void notifyRemoved(int position, int count){
+        if (Listeners.isEmpty() || count == 0)
+            return;
+        if (isRanked()) {
+            notifyDataSetChanged();
+            return;
+        }
+        if (PendingNotification == NOTIFICATION_REMOVED && PendingPosition >= position
+                && PendingPosition <= position + count) {
+            PendingCount += count;
+            PendingPosition = position;
+            return;
+        }
+        flushNotifications();
+        PendingNotification = NOTIFICATION_REMOVED;
+        PendingPosition = position;
+        PendingCount = count;
+    }
+
+    private void notifyChanged(int position, int count){
+        if (Listeners.isEmpty() || count == 0)
+            return;
+        if (isRanked()) {
+            notifyDataSetChanged();
+            return;
+        }
+        if (PendingNotification == NOTIFICATION_CHANGED && position <= PendingPosition + PendingCount
+                && position + count >= PendingPosition) {
+            int PendingEnd = PendingPosition + PendingCount;
+            PendingPosition = Math.min(position, PendingPosition);
+            PendingCount = Math.max(PendingEnd, position + count) - PendingPosition;
+            return;
+        }
+        flushNotifications();
+        PendingNotification = NOTIFICATION_CHANGED;
+        PendingPosition = position;
+        PendingCount = count;
+    }
+
+    /**
+     * Replace pending notifications by data set change, which is reported when order of
+     * filter result list is not kept.
+     */
+    private void notifyDataSetChanged(){
+        if (!Listeners.isEmpty())
+            PendingNotification = NOTIFICATION_DATA_SET_CHANGED;
+    }
+
+    private void flushNotifications(){
+        int Notification = PendingNotification;
+        int Position = PendingPosition;
+        int Count = PendingCount;
+        PendingNotification = NOTIFICATION_NONE;
+        for(int i = Listeners.size() - 1; i >= 0; i--) {
+            FilterResultListener<mClass> Listener = Listeners.get(i);
+            switch (Notification) {
+                case NOTIFICATION_INSERTED:
+                    Listener.onFilterResultInserted(this, Position, Count);
+                    break;
+                case NOTIFICATION_REMOVED:
+                    Listener.onFilterResultRemoved(this, Position, Count);
+                    break;
+                case NOTIFICATION_CHANGED:
+                    Listener.onFilterResultChanged(this, Position, Count);
+                    break;
+                case NOTIFICATION_DATA_SET_CHANGED:
+                    Listener.onFilterResultDataSetChanged(this);
+                    break;
+            }
+        }
+    }
+
+    private void triggerListenersDataSetChanged(){
+        for(int i = Listeners.size() - 1; i >= 0; i--) {
+            FilterResultListener<mClass> Listener = Listeners.get(i);
+            Listener.onFilterResultDataSetChanged(this);
+        }
+    }
+
+    private boolean isMatches(int index){
+        return isMatches(Filter, FilterString, index);
+    }
+
+    private boolean isMatches(@Nullable FilterInterface<? super mClass> filter,
+                              @Nullable String filterString, int index){
+        if (isAllMatches(filter, filterString))
+            return true;
+        if (SearchKeys != null && filter instanceof SearchKeyFilterInterface)
+            return ((SearchKeyFilterInterface<?>) filter).filterSearchKey(SearchKeys.get(index), filterString);
+        return filter.filter(get(index), filterString);
+    }
+
+    private void filterContent(){
+        long[] OldFilterResult = getNotificationBitmap();
+        fillFilterResult();
+        notifyFilterResultChanges(OldFilterResult);
+    }
+
+    private void fillFilterResult(){
+        if (isRanked()) {
+            fillRankedFilterResult();
+            return;
+        }
+        if (Trigrams != null && Filter instanceof SubstringFilterInterface && !isAllMatches(FilterString)) {
+            int[] Candidates = Trigrams.candidates(FilterString);
+            if (Candidates != null) {
+                int Count = 0;
+                for (int Candidate : Candidates)
+                    if (isMatches(Candidate))
+                        Candidates[Count++] = Candidate;
+                FilterResult.fill(size(), Candidates, Count);
+                ScannedSize = size();
+                return;
+            }
+        }
+        if (LazyFilterWindow > 0 && !isAllMatches(Filter, FilterString)) {
+            FilterResult.fill(size(), new int[0], 0);
+            ScannedSize = 0;
+            scanFilterResultSilently(LazyFilterWindow);
+            return;
+        }
+        ScannedSize = size();
+        FilterResult.fill(size(), isAllMatches(Filter, FilterString) ? null : createPositionFilter(),
+                getFilterPool(size()));
+    }
+
+    private boolean batchRemove(@NotNull Collection<?> c, boolean retain){
+        Collection<?> Lookup = c instanceof Set || c.size() <= HASH_LOOKUP_THRESHOLD ? c : new HashSet<>(c);
+        int Size = size();
+        long[] Removed = new long[(Size + 63) >>> 6];
+        boolean Found = false;
+        for (int i = 0; i < Size; i++)
+            if (Lookup.contains(get(i)) != retain) {
+                Removed[i >>> 6] |= 1L << i;
+                Found = true;
+            }
+        if (Found)
+            removeMarked(Removed);
+        return Found;
+    }
+
+    /**
+     * Remove elements at positions marked in passed bitmap in one pass.
+     */
+    private void removeMarked(@NotNull long[] Removed){
+        onContentChanged();
+        int Size = size();
+        int Count = 0;
+        for (int i = 0; i < Size; i++)
+            if ((Removed[i >>> 6] & (1L << i)) == 0)
+                super.set(Count++, get(i));
+        super.removeRange(Count, Size);
+        if (SearchKeys != null) {
+            int KeysCount = 0;
+            for (int i = 0; i < Size; i++)
+                if ((Removed[i >>> 6] & (1L << i)) == 0)
+                    SearchKeys.set(KeysCount++, SearchKeys.get(i));
+            SearchKeys.subList(KeysCount, Size).clear();
+        }
+        if (Trigrams != null)
+            Trigrams.removeAll(Removed);
+        if (BatchDepth == 0)
+            removeMatches(Removed);
+        flushNotifications();
+    }
+
+    /**
+     * Reorder match flags, search keys and trigram index after elements were reordered.
+     *
+     * @param Order Old real positions of elements in new order
+     */
+    private void reorderElements(@NotNull Integer[] Order){
+        int Size = Order.length;
+        if (SearchKeys != null) {
+            String[] Keys = SearchKeys.toArray(new String[Size]);
+            for (int i = 0; i < Size; i++)
+                SearchKeys.set(i, Keys[Order[i]]);
+        }
+        if (Trigrams != null)
+            Trigrams.reorder(Order);
+        FilterResultCache.clear();
+        if (BatchDepth > 0)
+            return;
+        if (ScannedSize < Size)
+            fillFilterResult();
+        else {
+            long[] Bitmap = FilterResult.toBitmap();
+            int[] Positions = new int[FilterResult.matchCount()];
+            int Count = 0;
+            for (int i = 0; i < Size; i++)
+                if ((Bitmap[Order[i] >>> 6] & (1L << Order[i])) != 0)
+                    Positions[Count++] = i;
+            FilterResult.fill(Size, Positions, Count);
+        }
+        triggerListenersDataSetChanged();
+    }
+
+    /**
+     * Check not scanned elements until filter result has passed size or all elements are
+     * checked.
+     *
+     * @return Count of found elements
+     */
+    private int scanFilterResultSilently(int filterResultSize){
+        int Found = 0;
+        while (BatchDepth == 0 && ScannedSize < size() && FilterResult.matchCount() < filterResultSize) {
+            int End = Math.min(size(), ScannedSize + LAZY_FILTER_CHUNK);
+            for (; ScannedSize < End; ScannedSize++)
+                if (isMatches(ScannedSize)) {
+                    FilterResult.set(ScannedSize, true);
+                    Found++;
+                }
+        }
+        return Found;
+    }
+
+    private boolean isRanked(){
+        return RankedLimit > 0 && Filter instanceof ScoringFilterInterface && !isAllMatches(FilterString);
+    }
+
+    /**
+     * Select elements with the best scores if filter result or content was changed since
+     * previous selection.
+     *
+     * @return Real positions of elements with the best scores, from the best one
+     */
+    @NotNull
+    private int[] getRankedPositions(){
+        if (BatchDepth == 0)
+            scanFilterResultSilently(Integer.MAX_VALUE);
+        if (RankedPositions != null && RankedFilterResult == FilterResult
+                && RankedFilterResultVersion == FilterResult.version() && RankedContentVersion == ContentVersion
+                && RankedFilter == Filter && FilterString.equals(RankedFilterString))
+            return RankedPositions;
+        @SuppressWarnings("unchecked")
+        ScoringFilterInterface<? super mClass> mFilter = (ScoringFilterInterface<? super mClass>) Filter;
+        int Limit = Math.min(RankedLimit, FilterResult.matchCount());
+        int[] Positions = new int[Limit];
+        int[] Scores = new int[Limit];
+        int HeapSize = 0;
+        long[] Bitmap = FilterResult.toBitmap();
+        for (int w = 0; w < Bitmap.length; w++) {
+            for (long Bits = Bitmap[w]; Bits != 0; Bits &= Bits - 1) {
+                int Position = (w << 6) + Long.numberOfTrailingZeros(Bits);
+                HeapSize = offerRanked(Positions, Scores, HeapSize, Position, mFilter.score(get(Position), FilterString));
+            }
+        }
+        return setRankedPositions(Positions, Scores, HeapSize);
+    }
+
+    /**
+     * Fill filter result and select elements with the best scores in one pass, so every
+     * element is scored once instead of being filtered and then scored.
+     */
+    private void fillRankedFilterResult(){
+        @SuppressWarnings("unchecked")
+        ScoringFilterInterface<? super mClass> mFilter = (ScoringFilterInterface<? super mClass>) Filter;
+        int Size = size();
+        int[] Candidates = Trigrams != null && Filter instanceof SubstringFilterInterface
+                ? Trigrams.candidates(FilterString) : null;
+        int CandidatesCount = Candidates != null ? Candidates.length : Size;
+        int Limit = Math.min(RankedLimit, CandidatesCount);
+        int[] Positions = new int[Limit];
+        int[] Scores = new int[Limit];
+        int[] Matches = new int[CandidatesCount];
+        int HeapSize = 0;
+        int Count = 0;
+        for (int i = 0; i < CandidatesCount; i++) {
+            int Position = Candidates != null ? Candidates[i] : i;
+            int Score = mFilter.score(get(Position), FilterString);
+            if (Score == ScoringFilterInterface.NO_MATCH)
+                continue;
+            Matches[Count++] = Position;
+            HeapSize = offerRanked(Positions, Scores, HeapSize, Position, Score);
+        }
+        FilterResult.fill(Size, Matches, Count);
+        ScannedSize = Size;
+        setRankedPositions(Positions, Scores, HeapSize);
+    }
+
+    /**
+     * Offer element to bounded min-heap of the best scores with capacity of passed arrays.
+     *
+     * @return New size of heap
+     */
+    private static int offerRanked(int[] positions, int[] scores, int heapSize, int position, int score){
+        if (heapSize < positions.length) {
+            positions[heapSize] = position;
+            scores[heapSize] = score;
+            siftUp(positions, scores, heapSize);
+            return heapSize + 1;
+        }
+        if (heapSize > 0 && score > scores[0]) {
+            positions[0] = position;
+            scores[0] = score;
+            siftDown(positions, scores, heapSize, 0);
+        }
+        return heapSize;
+    }
+
+    /**
+     * Drain heap of the best scores into ranked positions and remember state they were
+     * selected for.
+     *
+     * @return Real positions of elements with the best scores, from the best one
+     */
+    @NotNull
+    private int[] setRankedPositions(int[] positions, int[] scores, int heapSize){
+        int[] Result = new int[heapSize];
+        while (heapSize > 0) {
+            Result[--heapSize] = positions[0];
+            positions[0] = positions[heapSize];
+            scores[0] = scores[heapSize];
+            siftDown(positions, scores, heapSize, 0);
+        }
+        RankedPositions = Result;
+        RankedFilterResult = FilterResult;
+        RankedFilterResultVersion = FilterResult.version();
+        RankedContentVersion = ContentVersion;
+        RankedFilter = Filter;
+        RankedFilterString = FilterString;
+        return Result;
+    }
+
+    /**
+     * Is element at heap index i worse than element at heap index j, so it is closer to root
+     * of heap.
+     */
+    private static boolean isWorse(int[] positions, int[] scores, int i, int j){
+        return scores[i] < scores[j] || scores[i] == scores[j] && positions[i] > positions[j];
+    }
+
+    private static void siftUp(int[] positions, int[] scores, int index){
+        while (index > 0) {
+            int Parent = (index - 1) >>> 1;
+            if (!isWorse(positions, scores, index, Parent))
+                return;
+            swap(positions, scores, index, Parent);
+            index = Parent;
+        }
+    }
+
+    private static void siftDown(int[] positions, int[] scores, int size, int index){
+        while (true) {
+            int Worst = index;
+            int Left = 2 * index + 1;
+            if (Left < size && isWorse(positions, scores, Left, Worst))
+                Worst = Left;
+            if (Left + 1 < size && isWorse(positions, scores, Left + 1, Worst))
+                Worst = Left + 1;
+            if (Worst == index)
+                return;
+            swap(positions, scores, index, Worst);
+            index = Worst;
+        }
+    }
+
+    private static void swap(int[] positions, int[] scores, int i, int j){
+        int Position = positions[i];
+        positions[i] = positions[j];
+        positions[j] = Position;
+        int Score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = Score;
+    }
+
+    private void insertKeys(int index, int count){
+        if (SearchKeys != null) {
+            String[] Keys = new String[count];
+            for (int i = 0; i < count; i++)
+                Keys[i] = KeyExtractor.getSearchKey(get(index + i));
+            SearchKeys.addAll(index, Arrays.asList(Keys));
+        }
+        if (Trigrams != null)
+            for (int i = 0; i < count; i++)
+                Trigrams.insert(index + i, getTrigramKey(index + i));
+    }
+
+    private void removeKeys(int fromIndex, int toIndex){
+        if (SearchKeys != null)
+            SearchKeys.subList(fromIndex, toIndex).clear();
+        if (Trigrams != null)
+            Trigrams.remove(fromIndex, toIndex);
+    }
+
+    private void setKey(int index){
+        if (SearchKeys != null)
+            SearchKeys.set(index, KeyExtractor.getSearchKey(get(index)));
+        if (Trigrams != null)
+            Trigrams.set(index, getTrigramKey(index));
+    }
+
+    private void rebuildTrigramIndex(){
+        Trigrams = new TrigramIndex();
+        for (int i = 0; i < size(); i++)
+            Trigrams.insert(i, getTrigramKey(i));
+    }
+
+    @Nullable
+    private String getTrigramKey(int index){
+        if (SearchKeys != null)
+            return SearchKeys.get(index);
+        mClass Item = get(index);
+        return Item == null ? null : Item.toString();
+    }
+
+    /**
+     * Interface for filter which checks elements according to query of any type, e.g.
+     * range, set of enum values or several conditions. {@link FilterInterface} is special
+     * case of this filter, where query is string which is checked with every element.
+     *
+     * @see #setQueryFilter(QueryFilterInterface, Object)
+     */
+    public interface QueryFilterInterface<mClass, mQuery>{
+        /**
+         * Called once when query is set to prepare matcher, e.g. to parse strings or
+         * build lookup tables.
+         *
+         * @param query Query according which content should be filtered
+         * @return Matcher of elements
+         */
+        @NotNull
+        QueryMatcher<mClass> compile(@NotNull mQuery query);
+    }
+
+    /**
+     * Matcher compiled by {@link QueryFilterInterface} from query.
+     */
+    public interface QueryMatcher<mClass>{
+        /**
+         * Called to decide if Data pass the filter.
+         *
+         * @param Data The object in question
+         * @return Is Data should appear in result list
+         */
+        boolean matches(mClass Data);
+    }
+
+    /**
+     * Interface for filter.
+     */
+    public interface FilterInterface<mClass>{
+        /**
+         * Called to decide if Data pass the filter. If returns <tt>true</tt> for Data,
+         * it will appear in result list, otherwise it will not.
+         *
+         * @param Data The object in question
+         * @param FilterString The string according which Data should be filtered
+         * @return Is Data should appear in result list
+         */
+        boolean filter(mClass Data, String FilterString);
+    }
+
+    /**
+     * Interface for filter which result can only shrink when filter string is narrowed
+     * (e.g. substring or prefix filters). Such filters allow {@link FilterableArrayList} to
+     * recheck only current filter result instead of whole content.
+     *
+     * @see #setFilterString(String)
+     */
+    public interface MonotonicFilterInterface<mClass> extends FilterInterface<mClass>{
+        /**
+         * Called to decide if every Data which pass the filter with narrowFilterString
+         * pass it with wideFilterString as well.
+         *
+         * @param wideFilterString Previous filter string, not empty
+         * @param narrowFilterString New filter string, not empty
+         * @return Is narrowFilterString narrows wideFilterString
+         */
+        boolean isNarrowing(@NotNull String wideFilterString, @NotNull String narrowFilterString);
+    }
+
+    /**
+     * Interface for filter which also scores elements which pass it, e.g. by edit distance
+     * to filter string.
+     *
+     * @see #setRankedFilterLimit(int)
+     * @see FuzzyFilter
+     */
+    public interface ScoringFilterInterface<mClass> extends FilterInterface<mClass>{
+        /**
+         * Score returned for Data which does not pass the filter.
+         */
+        int NO_MATCH = Integer.MIN_VALUE;
+
+        /**
+         * Called to score Data. In ranked mode list is refiltered by this method only,
+         * so it must agree with {@link #filter(Object, String)}.
+         *
+         * @param Data The object in question
+         * @param FilterString The string according which Data should be filtered
+         * @return Score of Data, the greater the better, or {@link #NO_MATCH} if Data does not
+         * pass the filter
+         */
+        int score(mClass Data, String FilterString);
+    }
+
+    /**
+     * Interface to write and read elements of list.
+     *
+     * @see #save(File, ElementSerializer)
+     * @see #load(File, ElementSerializer)
+     */
+    public interface ElementSerializer<mClass>{
+        /**
+         * Called to write Data into file.
+         *
+         * @param Data The object to write
+         * @param Output Output of file
+         */
+        void write(mClass Data, @NotNull DataOutput Output) throws IOException;
+
+        /**
+         * Called to read object which was written by {@link #write(Object, DataOutput)}.
+         *
+         * @param Input Input of file
+         * @return Read object
+         */
+        mClass read(@NotNull DataInput Input) throws IOException;
+    }
+
+    /**
+     * Interface to compute search key of element, e.g. lower-cased string without accents.
+     *
+     * @see #setSearchKeyExtractor(SearchKeyExtractor)
+     */
+    public interface SearchKeyExtractor<mClass>{
+        /**
+         * Called once when Data is added to list or replaces another element.
+         *
+         * @param Data The object which key is needed
+         * @return Search key of Data
+         */
+        @Nullable
+        String getSearchKey(mClass Data);
+    }
+
+    /**
+     * Interface for filter which is able to check precomputed search keys of elements. If
+     * {@link SearchKeyExtractor} is set, {@link #filterSearchKey(String, String)} is called
+     * instead of {@link #filter(Object, String)}.
+     *
+     * @see #setSearchKeyExtractor(SearchKeyExtractor)
+     */
+    public interface SearchKeyFilterInterface<mClass> extends FilterInterface<mClass>{
+        /**
+         * Called to decide if element with passed search key pass the filter.
+         *
+         * @param SearchKey Search key of the object in question
+         * @param FilterString The string according which Data should be filtered
+         * @return Is Data should appear in result list
+         */
+        boolean filterSearchKey(@Nullable String SearchKey, String FilterString);
+    }
+
+    /**
+     * Interface for filter which passes only elements which keys contain filter string
+     * (e.g. case-sensitive substring filter over search keys). Such filters allow
+     * {@link FilterableArrayList} to check only candidates found by trigram index.
+     *
+     * @see #setTrigramIndexEnabled(boolean)
+     */
+    public interface SubstringFilterInterface<mClass> extends FilterInterface<mClass>{
+    }
+
+    /**
+     * Listener of filter result list changes. Positions are given in filter result list
+     * coordinates, and every notification is applied to the state left by previous ones,
+     * like {@code RecyclerView.Adapter#notifyItemRangeInserted(int, int)} and related methods
+     * expect. Adjacent changes of the same kind are reported as single range.
+     */
+    public interface FilterResultListener<mClass>{
+        /**
+         * Called when elements were inserted into filter result list.
+         *
+         * @param list List which filter result was changed
+         * @param position Position of the first inserted element
+         * @param count Count of inserted elements
+         */
+        void onFilterResultInserted(@NotNull FilterableArrayList<mClass> list, int position, int count);
+
+        /**
+         * Called when elements were removed from filter result list.
+         *
+         * @param list List which filter result was changed
+         * @param position Position of the first removed element
+         * @param count Count of removed elements
+         */
+        void onFilterResultRemoved(@NotNull FilterableArrayList<mClass> list, int position, int count);
+
+        /**
+         * Called when elements of filter result list were replaced with {@link #set(int, Object)}.
+         *
+         * @param list List which filter result was changed
+         * @param position Position of the first changed element
+         * @param count Count of changed elements
+         */
+        void onFilterResultChanged(@NotNull FilterableArrayList<mClass> list, int position, int count);
+
+        /**
+         * Called when filter result list was changed so that it can't be described by ranges,
+         * e.g. after batch of content changes.
+         *
+         * @param list List which filter result was changed
+         * @see #endBatch()
+         */
+        void onFilterResultDataSetChanged(@NotNull FilterableArrayList<mClass> list);
+    }
+
+    /**
+     * Operation which changes content of list as single batch.
+     *
+     * @see #mutate(BatchOperation)
+     */
+    public interface BatchOperation<mClass>{
+        /**
+         * Called to change content of list.
+         *
+         * @param list List to change
+         */
+        void apply(@NotNull FilterableArrayList<mClass> list);
+    }
+
+    /**
+     * Callback for asynchronous filtering.
+     *
+     * @see #setFilterStringAsync(String, Executor, FilterCallback)
+     */
+    public interface FilterCallback<mClass>{
+        /**
+         * Called when result of asynchronous filtering is published.
+         *
+         * @param list List which filter result was changed
+         */
+        void onFilterComplete(@NotNull FilterableArrayList<mClass> list);
+    }
+
+    private class FilterResultCacheKey{
+        final FilterInterface<? super mClass> Filter;
+        final String FilterString;
+
+        FilterResultCacheKey(FilterInterface<? super mClass> Filter, String FilterString){
+            this.Filter = Filter;
+            this.FilterString = Filter instanceof CompiledQueryFilter ? null : FilterString;
+        }
+
+        boolean matches(int index){
+            return isMatches(Filter, FilterString, index);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof FilterableArrayList.FilterResultCacheKey))
+                return false;
+            FilterableArrayList<?>.FilterResultCacheKey Key = (FilterableArrayList<?>.FilterResultCacheKey) obj;
+            return (Key.Filter == Filter || Filter instanceof CompiledQueryFilter && Filter.equals(Key.Filter))
+                    && (FilterString == null ? Key.FilterString == null : FilterString.equals(Key.FilterString));
+        }
+
+        @Override
+        public int hashCode() {
+            int FilterHash = Filter instanceof CompiledQueryFilter ? Filter.hashCode() : System.identityHashCode(Filter);
+            return FilterHash * 31 + (FilterString == null ? 0 : FilterString.hashCode());
+        }
+    }
+
+    /**
+     * Immutable state of {@link FilterableArrayList} at some point in time. As list it
+     * contains all elements of real data set.
+     *
+     * @see #snapshot()
+     */
+    public static final class Snapshot<mClass> extends AbstractList<mClass> implements RandomAccess{
+        private final Object[] Content;
+        private final FilterIndex FilterResult;
+        private final int[] RankedPositions;
+        private final String FilterString;
+
+        private Snapshot(@NotNull Object[] Content, @NotNull FilterIndex FilterResult,
+                         @Nullable int[] RankedPositions, @Nullable String FilterString){
+            this.Content = Content;
+            this.FilterResult = FilterResult;
+            this.RankedPositions = RankedPositions;
+            this.FilterString = FilterString;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public mClass get(int index) {
+            return (mClass) Content[index];
+        }
+
+        @Override
+        public int size() {
+            return Content.length;
+        }
+
+        /**
+         * @see FilterableArrayList#filterResultGet(int)
+         */
+        public mClass filterResultGet(int index){
+            return get(getRealPosition(index));
+        }
+
+        /**
+         * @see FilterableArrayList#filterResultSize()
+         */
+        public int filterResultSize(){
+            return RankedPositions != null ? RankedPositions.length : FilterResult.matchCount();
+        }
+
+        /**
+         * @see FilterableArrayList#getRealPosition(int)
+         */
+        public int getRealPosition(int filterResultIndex){
+            if (RankedPositions != null)
+                return RankedPositions[filterResultIndex];
+            return FilterResult.select(filterResultIndex);
+        }
+
+        /**
+         * @see FilterableArrayList#getFilterResultPosition(int)
+         */
+        public int getFilterResultPosition(int index){
+            if (!FilterResult.get(index))
+                return -1;
+            if (RankedPositions != null) {
+                for (int i = 0; i < RankedPositions.length; i++)
+                    if (RankedPositions[i] == index)
+                        return i;
+                return -1;
+            }
+            return FilterResult.rank(index);
+        }
+
+        /**
+         * @return Filter string which was set when snapshot was created
+         */
+        @Nullable
+        public String getFilterString(){
+            return FilterString;
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private class FilterResultSpliterator implements Spliterator<mClass>{
+        private int Index;
+        private final int Fence;
+        private final int ExpectedModCount = modCount;
+
+        FilterResultSpliterator(int Index, int Fence){
+            this.Index = Index;
+            this.Fence = Fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super mClass> action) {
+            if (Index >= Fence)
+                return false;
+            action.accept(get(getRealPosition(Index++)));
+            if (modCount != ExpectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super mClass> action) {
+            for (; Index < Fence; Index++)
+                action.accept(get(getRealPosition(Index)));
+            if (modCount != ExpectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        @Nullable
+        @Override
+        public Spliterator<mClass> trySplit() {
+            int Middle = (Index + Fence) >>> 1;
+            if (Middle <= Index)
+                return null;
+            Spliterator<mClass> Prefix = new FilterResultSpliterator(Index, Middle);
+            Index = Middle;
+            return Prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Fence - Index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    /**
+     * {@link FilterInterface} which checks elements by matcher compiled from query and
+     * ignores filter string.
+     */
+    private static class CompiledQueryFilter<mClass, mQuery> implements FilterInterface<mClass>{
+        final QueryFilterInterface<? super mClass, mQuery> Filter;
+        final mQuery Query;
+        final QueryMatcher<? super mClass> Matcher;
+
+        CompiledQueryFilter(@NotNull QueryFilterInterface<? super mClass, mQuery> Filter, @NotNull mQuery Query){
+            this.Filter = Filter;
+            this.Query = Query;
+            Matcher = Filter.compile(Query);
+        }
+
+        @Override
+        public boolean filter(mClass Data, String FilterString) {
+            return Matcher.matches(Data);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof CompiledQueryFilter))
+                return false;
+            CompiledQueryFilter<?, ?> Other = (CompiledQueryFilter<?, ?>) obj;
+            return Other.Filter == Filter && Other.Query.equals(Query);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(Filter) * 31 + Query.hashCode();
+        }
+    }
+
+    private static class CachedFilterResult{
+        final String FilterString;
+        final FilterIndex Result;
+
+        CachedFilterResult(String FilterString, FilterIndex Result){
+            this.FilterString = FilterString;
+            this.Result = Result;
+        }
+    }
+
+    /**
+     * {@link InputStream} which reads memory-mapped file without copying it.
+     */
+    private static class ByteBufferInputStream extends InputStream{
+        final ByteBuffer Buffer;
+
+        ByteBufferInputStream(@NotNull ByteBuffer Buffer){
+            this.Buffer = Buffer;
+        }
+
+        @Override
+        public int read() {
+            return Buffer.hasRemaining() ? Buffer.get() & 0xFF : -1;
+        }
 
-        DataHolder(int position, mClass Data){
-            this.position = position;
-            this.Data = Data;
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!Buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, Buffer.remaining());
+            Buffer.get(b, off, len);
+            return len;
         }
     }
 }
@@ -0,0 +1,245 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * List of doubles with filter. Works like {@link FilterableArrayList}, but values are stored
+ * in double array and checked by {@link DoubleFilterInterface}, so they are never boxed.
+ */
+public class FilterableDoubleList extends FilterablePrimitiveList {
+    private static final String TAG = "FilterableDoubleList";
+
+    private double[] Data;
+    private DoubleFilterInterface Filter = null;
+
+    /**
+     * @param initialCapacity Initial capacity of the list
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    public FilterableDoubleList(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        Data = new double[initialCapacity];
+    }
+
+    public FilterableDoubleList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param values Values to copy into the list
+     */
+    public FilterableDoubleList(@NotNull double[] values) {
+        Data = values.clone();
+        Size = values.length;
+        filterContent();
+    }
+
+    /**
+     * @see java.util.ArrayList#get(int)
+     */
+    public double get(int index) {
+        checkIndex(index, Size);
+        return Data[index];
+    }
+
+    /**
+     * @see java.util.ArrayList#set(int, Object)
+     */
+    public double set(int index, double value) {
+        checkIndex(index, Size);
+        double Old = Data[index];
+        Data[index] = value;
+        setMatch(index);
+        return Old;
+    }
+
+    /**
+     * @see java.util.ArrayList#add(Object)
+     */
+    public void add(double value) {
+        add(Size, value);
+    }
+
+    /**
+     * @see java.util.ArrayList#add(int, Object)
+     */
+    public void add(int index, double value) {
+        insertSpace(index, 1);
+        Data[index] = value;
+        insertMatches(index, 1);
+    }
+
+    /**
+     * @see java.util.ArrayList#addAll(java.util.Collection)
+     */
+    public void addAll(@NotNull double[] values) {
+        addAll(Size, values);
+    }
+
+    /**
+     * @see java.util.ArrayList#addAll(int, java.util.Collection)
+     */
+    public void addAll(int index, @NotNull double[] values) {
+        insertSpace(index, values.length);
+        System.arraycopy(values, 0, Data, index, values.length);
+        insertMatches(index, values.length);
+    }
+
+    /**
+     * @see java.util.ArrayList#remove(int)
+     */
+    public double remove(int index) {
+        checkIndex(index, Size);
+        double Old = Data[index];
+        removeRange(index, index + 1);
+        return Old;
+    }
+
+    /**
+     * @see java.util.ArrayList#indexOf(Object)
+     */
+    public int indexOf(double value) {
+        for (int i = 0; i < Size; i++)
+            if (Double.doubleToLongBits(Data[i]) == Double.doubleToLongBits(value))
+                return i;
+        return -1;
+    }
+
+    /**
+     * @see java.util.ArrayList#lastIndexOf(Object)
+     */
+    public int lastIndexOf(double value) {
+        for (int i = Size - 1; i >= 0; i--)
+            if (Double.doubleToLongBits(Data[i]) == Double.doubleToLongBits(value))
+                return i;
+        return -1;
+    }
+
+    /**
+     * @see java.util.ArrayList#contains(Object)
+     */
+    public boolean contains(double value) {
+        return indexOf(value) != -1;
+    }
+
+    /**
+     * @see java.util.ArrayList#toArray()
+     */
+    @NotNull
+    public double[] toArray() {
+        return Arrays.copyOf(Data, Size);
+    }
+
+    /**
+     * Returns the value at the specified position in filter result list.
+     *
+     * @param index Index of the value to return
+     * @return The value at the specified position in filter result list
+     * @throws IndexOutOfBoundsException if index is out of filter result list range
+     */
+    public double filterResultGet(int index) {
+        return Data[FilterResult.select(index)];
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified value in filter result
+     * list, or -1 if filter result list does not contain the value.
+     *
+     * @param value Value to search for
+     * @return Index in filter result list or -1
+     */
+    public int filterResultIndexOf(double value) {
+        for (int i = 0; i < Size; i++)
+            if (Double.doubleToLongBits(Data[i]) == Double.doubleToLongBits(value) && FilterResult.get(i))
+                return FilterResult.rank(i);
+        return -1;
+    }
+
+    /**
+     * Returns <tt>true</tt> if filter result list contains the specified value.
+     *
+     * @param value Value whose presence in filter result list is to be tested
+     * @return <tt>true</tt> if filter result list contains the specified value
+     */
+    public boolean filterResultContains(double value) {
+        return filterResultIndexOf(value) != -1;
+    }
+
+    /**
+     * @return Array of values of filter result list
+     */
+    @NotNull
+    public double[] filterResultToArray() {
+        double[] Result = new double[FilterResult.matchCount()];
+        for (int i = 0; i < Result.length; i++)
+            Result[i] = Data[FilterResult.select(i)];
+        return Result;
+    }
+
+    /**
+     * Get previously set {@link DoubleFilterInterface}.
+     *
+     * @return Previously set {@link DoubleFilterInterface} or null
+     */
+    @Nullable
+    public DoubleFilterInterface getFilter() {
+        return Filter;
+    }
+
+    /**
+     * Set {@link DoubleFilterInterface} according which content will be filtered.
+     *
+     * @param filter {@link DoubleFilterInterface} or null
+     */
+    public void setFilter(@Nullable DoubleFilterInterface filter) {
+        Filter = filter;
+        filterContent();
+    }
+
+    @Override
+    boolean hasFilter() {
+        return Filter != null;
+    }
+
+    @Override
+    boolean isMatches(int index) {
+        return Filter.filter(Data[index], FilterString);
+    }
+
+    @Override
+    Object getArray() {
+        return Data;
+    }
+
+    @Override
+    int getCapacity() {
+        return Data.length;
+    }
+
+    @Override
+    void resize(int capacity) {
+        Data = Arrays.copyOf(Data, capacity);
+    }
+
+    /**
+     * Interface for filter of doubles. Unlike {@link FilterableArrayList.FilterInterface}, it
+     * is called even if filter string is empty.
+     *
+     * @see FilterableArrayList.FilterInterface
+     */
+    public interface DoubleFilterInterface{
+        /**
+         * Called to decide if Data pass the filter.
+         *
+         * @param Data The value in question
+         * @param FilterString The string according which Data should be filtered, may be
+         *                     empty or null
+         * @return Is Data should appear in result list
+         */
+        boolean filter(double Data, String FilterString);
+    }
+}
@@ -0,0 +1,245 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * List of longs with filter. Works like {@link FilterableArrayList}, but values are stored
+ * in long array and checked by {@link LongFilterInterface}, so they are never boxed.
+ */
+public class FilterableLongList extends FilterablePrimitiveList {
+    private static final String TAG = "FilterableLongList";
+
+    private long[] Data;
+    private LongFilterInterface Filter = null;
+
+    /**
+     * @param initialCapacity Initial capacity of the list
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    public FilterableLongList(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        Data = new long[initialCapacity];
+    }
+
+    public FilterableLongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param values Values to copy into the list
+     */
+    public FilterableLongList(@NotNull long[] values) {
+        Data = values.clone();
+        Size = values.length;
+        filterContent();
+    }
+
+    /**
+     * @see java.util.ArrayList#get(int)
+     */
+    public long get(int index) {
+        checkIndex(index, Size);
+        return Data[index];
+    }
+
+    /**
+     * @see java.util.ArrayList#set(int, Object)
+     */
+    public long set(int index, long value) {
+        checkIndex(index, Size);
+        long Old = Data[index];
+        Data[index] = value;
+        setMatch(index);
+        return Old;
+    }
+
+    /**
+     * @see java.util.ArrayList#add(Object)
+     */
+    public void add(long value) {
+        add(Size, value);
+    }
+
+    /**
+     * @see java.util.ArrayList#add(int, Object)
+     */
+    public void add(int index, long value) {
+        insertSpace(index, 1);
+        Data[index] = value;
+        insertMatches(index, 1);
+    }
+
+    /**
+     * @see java.util.ArrayList#addAll(java.util.Collection)
+     */
+    public void addAll(@NotNull long[] values) {
+        addAll(Size, values);
+    }
+
+    /**
+     * @see java.util.ArrayList#addAll(int, java.util.Collection)
+     */
+    public void addAll(int index, @NotNull long[] values) {
+        insertSpace(index, values.length);
+        System.arraycopy(values, 0, Data, index, values.length);
+        insertMatches(index, values.length);
+    }
+
+    /**
+     * @see java.util.ArrayList#remove(int)
+     */
+    public long remove(int index) {
+        checkIndex(index, Size);
+        long Old = Data[index];
+        removeRange(index, index + 1);
+        return Old;
+    }
+
+    /**
+     * @see java.util.ArrayList#indexOf(Object)
+     */
+    public int indexOf(long value) {
+        for (int i = 0; i < Size; i++)
+            if (Data[i] == value)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @see java.util.ArrayList#lastIndexOf(Object)
+     */
+    public int lastIndexOf(long value) {
+        for (int i = Size - 1; i >= 0; i--)
+            if (Data[i] == value)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @see java.util.ArrayList#contains(Object)
+     */
+    public boolean contains(long value) {
+        return indexOf(value) != -1;
+    }
+
+    /**
+     * @see java.util.ArrayList#toArray()
+     */
+    @NotNull
+    public long[] toArray() {
+        return Arrays.copyOf(Data, Size);
+    }
+
+    /**
+     * Returns the value at the specified position in filter result list.
+     *
+     * @param index Index of the value to return
+     * @return The value at the specified position in filter result list
+     * @throws IndexOutOfBoundsException if index is out of filter result list range
+     */
+    public long filterResultGet(int index) {
+        return Data[FilterResult.select(index)];
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified value in filter result
+     * list, or -1 if filter result list does not contain the value.
+     *
+     * @param value Value to search for
+     * @return Index in filter result list or -1
+     */
+    public int filterResultIndexOf(long value) {
+        for (int i = 0; i < Size; i++)
+            if (Data[i] == value && FilterResult.get(i))
+                return FilterResult.rank(i);
+        return -1;
+    }
+
+    /**
+     * Returns <tt>true</tt> if filter result list contains the specified value.
+     *
+     * @param value Value whose presence in filter result list is to be tested
+     * @return <tt>true</tt> if filter result list contains the specified value
+     */
+    public boolean filterResultContains(long value) {
+        return filterResultIndexOf(value) != -1;
+    }
+
+    /**
+     * @return Array of values of filter result list
+     */
+    @NotNull
+    public long[] filterResultToArray() {
+        long[] Result = new long[FilterResult.matchCount()];
+        for (int i = 0; i < Result.length; i++)
+            Result[i] = Data[FilterResult.select(i)];
+        return Result;
+    }
+
+    /**
+     * Get previously set {@link LongFilterInterface}.
+     *
+     * @return Previously set {@link LongFilterInterface} or null
+     */
+    @Nullable
+    public LongFilterInterface getFilter() {
+        return Filter;
+    }
+
+    /**
+     * Set {@link LongFilterInterface} according which content will be filtered.
+     *
+     * @param filter {@link LongFilterInterface} or null
+     */
+    public void setFilter(@Nullable LongFilterInterface filter) {
+        Filter = filter;
+        filterContent();
+    }
+
+    @Override
+    boolean hasFilter() {
+        return Filter != null;
+    }
+
+    @Override
+    boolean isMatches(int index) {
+        return Filter.filter(Data[index], FilterString);
+    }
+
+    @Override
+    Object getArray() {
+        return Data;
+    }
+
+    @Override
+    int getCapacity() {
+        return Data.length;
+    }
+
+    @Override
+    void resize(int capacity) {
+        Data = Arrays.copyOf(Data, capacity);
+    }
+
+    /**
+     * Interface for filter of longs. Unlike {@link FilterableArrayList.FilterInterface}, it
+     * is called even if filter string is empty.
+     *
+     * @see FilterableArrayList.FilterInterface
+     */
+    public interface LongFilterInterface{
+        /**
+         * Called to decide if Data pass the filter.
+         *
+         * @param Data The value in question
+         * @param FilterString The string according which Data should be filtered, may be
+         *                     empty or null
+         * @return Is Data should appear in result list
+         */
+        boolean filter(long Data, String FilterString);
+    }
+}
@@ -0,0 +1,214 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Base of lists of primitives with filter, which keeps filter result and filter string and
+ * moves values inside array. Subclasses store values in primitive arrays and check them by
+ * primitive filters, so values are never boxed.
+ * <p>
+ * Unlike {@link FilterableArrayList}, filter is called for every value whenever it is set,
+ * even if filter string is empty, so it may be used for filters without string, e.g. by
+ * range of values.
+ *
+ * @see FilterableIntList
+ * @see FilterableLongList
+ * @see FilterableDoubleList
+ */
+public abstract class FilterablePrimitiveList {
+    static final int DEFAULT_CAPACITY = 10;
+
+    final FilterIndex FilterResult = new FilterIndex();
+    String FilterString = "";
+    int Size = 0;
+
+    FilterablePrimitiveList(){
+    }
+
+    /**
+     * @return Count of values in real data set
+     */
+    public int size(){
+        return Size;
+    }
+
+    /**
+     * @return <tt>true</tt> if real data set contains no values
+     */
+    public boolean isEmpty(){
+        return Size == 0;
+    }
+
+    /**
+     * @see java.util.ArrayList#removeRange(int, int)
+     */
+    public void removeRange(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex, Size);
+        Object Values = getArray();
+        System.arraycopy(Values, toIndex, Values, fromIndex, Size - toIndex);
+        Size -= toIndex - fromIndex;
+        removeMatches(fromIndex, toIndex);
+    }
+
+    /**
+     * @see java.util.ArrayList#clear()
+     */
+    public void clear() {
+        Size = 0;
+        clearMatches();
+    }
+
+    /**
+     * @see java.util.ArrayList#ensureCapacity(int)
+     */
+    public void ensureCapacity(int minCapacity) {
+        int Capacity = getCapacity();
+        if (minCapacity > Capacity)
+            resize(newCapacity(Capacity, minCapacity));
+    }
+
+    /**
+     * Get size of filter result list.
+     *
+     * @return Size of filter result list
+     */
+    public int filterResultSize(){
+        return FilterResult.matchCount();
+    }
+
+    /**
+     * Returns <tt>true</tt> if filter result list contains no values.
+     *
+     * @return <tt>true</tt> if filter result list contains no values
+     */
+    public boolean isFilterResultEmpty(){
+        return FilterResult.matchCount() == 0;
+    }
+
+    /**
+     * Translate position in filter result list into position in real data set.
+     *
+     * @param filterResultIndex Index of the value in filter result list
+     * @return Index of the same value in real data set
+     * @throws IndexOutOfBoundsException if index is out of filter result list range
+     */
+    public int getRealPosition(int filterResultIndex){
+        return FilterResult.select(filterResultIndex);
+    }
+
+    /**
+     * Translate position in real data set into position in filter result list.
+     *
+     * @param index Index of the value in real data set
+     * @return Index of the same value in filter result list or -1 if it doesn't pass the filter
+     * @throws IndexOutOfBoundsException if index is out of real data set range
+     */
+    public int getFilterResultPosition(int index){
+        return FilterResult.get(index) ? FilterResult.rank(index) : -1;
+    }
+
+    /**
+     * Get previously set filter string.
+     *
+     * @return Previously set filter string or null.
+     */
+    @Nullable
+    public String getFilterString() {
+        return FilterString;
+    }
+
+    /**
+     * Set filter string according which content will be filtered.
+     *
+     * @param filterString String or null
+     */
+    public void setFilterString(@Nullable String filterString) {
+        FilterString = filterString;
+        filterContent();
+    }
+
+    /**
+     * @return Is filter set
+     */
+    abstract boolean hasFilter();
+
+    /**
+     * Check value at real position by filter. Called only if filter is set.
+     */
+    abstract boolean isMatches(int index);
+
+    /**
+     * @return Primitive array which stores values
+     */
+    abstract Object getArray();
+
+    /**
+     * @return Length of primitive array which stores values
+     */
+    abstract int getCapacity();
+
+    /**
+     * Replace primitive array which stores values with copy of passed length.
+     */
+    abstract void resize(int capacity);
+
+    /**
+     * Shift values to free space for passed count of values at passed position. Caller must
+     * write values and call {@link #insertMatches(int, int)} after it.
+     */
+    void insertSpace(int index, int count){
+        checkIndex(index, Size + 1);
+        ensureCapacity(Size + count);
+        Object Values = getArray();
+        System.arraycopy(Values, index, Values, index + count, Size - index);
+        Size += count;
+    }
+
+    void filterContent(){
+        FilterResult.fill(Size, isAllMatches() ? null : new FilterIndex.PositionFilter() {
+            @Override
+            public boolean matches(int position) {
+                return isMatches(position);
+            }
+        }, null);
+    }
+
+    void insertMatches(int index, int count){
+        for (int i = index; i < index + count; i++)
+            FilterResult.insert(i, isAllMatches() || isMatches(i));
+    }
+
+    void setMatch(int index){
+        FilterResult.set(index, isAllMatches() || isMatches(index));
+    }
+
+    void removeMatches(int fromIndex, int toIndex){
+        for (int i = toIndex - 1; i >= fromIndex; i--)
+            FilterResult.remove(i);
+    }
+
+    void clearMatches(){
+        FilterResult.clear();
+    }
+
+    private boolean isAllMatches(){
+        return !hasFilter();
+    }
+
+    static int newCapacity(int capacity, int minCapacity){
+        if (minCapacity < 0)
+            throw new OutOfMemoryError();
+        return Math.max(minCapacity, capacity + (capacity >> 1));
+    }
+
+    static void checkIndex(int index, int size){
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    static void checkRange(int fromIndex, int toIndex, int size){
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex
+                    + ", size: " + size);
+    }
+}
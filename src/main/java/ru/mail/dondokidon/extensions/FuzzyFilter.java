@@ -0,0 +1,94 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Filter for {@link FilterableArrayList} which passes elements which keys contain filter
+ * string with at most passed count of typos (inserted, deleted or replaced chars), ignoring
+ * case. Score of element is minus count of typos, so exact matches go first in ranked mode.
+ *
+ * @param <mClass> Class of filtered elements
+ * @see FilterableArrayList#setRankedFilterLimit(int)
+ */
+public class FuzzyFilter<mClass> implements FilterableArrayList.ScoringFilterInterface<mClass> {
+    private static final String TAG = "FuzzyFilter";
+
+    private final int MaxErrors;
+    private final FilterableArrayList.SearchKeyExtractor<? super mClass> KeyExtractor;
+
+    /**
+     * @param maxErrors Maximum count of typos
+     * @param keyExtractor Extractor of keys or null to use {@link String#valueOf(Object)}
+     * @throws IllegalArgumentException if maxErrors is negative
+     */
+    public FuzzyFilter(int maxErrors, @Nullable FilterableArrayList.SearchKeyExtractor<? super mClass> keyExtractor) {
+        if (maxErrors < 0)
+            throw new IllegalArgumentException("Illegal maxErrors: " + maxErrors);
+        MaxErrors = maxErrors;
+        KeyExtractor = keyExtractor;
+    }
+
+    /**
+     * @param maxErrors Maximum count of typos
+     * @throws IllegalArgumentException if maxErrors is negative
+     */
+    public FuzzyFilter(int maxErrors) {
+        this(maxErrors, null);
+    }
+
+    @Override
+    public boolean filter(mClass Data, String FilterString) {
+        return distance(Data, FilterString) <= MaxErrors;
+    }
+
+    @Override
+    public int score(mClass Data, String FilterString) {
+        int Distance = distance(Data, FilterString);
+        return Distance <= MaxErrors ? -Distance : NO_MATCH;
+    }
+
+    /**
+     * @return Maximum count of typos
+     */
+    public int getMaxErrors() {
+        return MaxErrors;
+    }
+
+    /**
+     * Count minimum typos of FilterString among all substrings of key of Data. Only rows of
+     * FilterString prefixes which may still have at most {@link #getMaxErrors()} typos are
+     * computed (Ukkonen's cutoff), so keys which don't match are rejected quickly.
+     *
+     * @return Count of typos or {@link #getMaxErrors()} + 1 if it is exceeded
+     */
+    private int distance(mClass Data, String FilterString){
+        String Key = KeyExtractor != null ? KeyExtractor.getSearchKey(Data) : String.valueOf(Data);
+        if (Key == null)
+            Key = "";
+        int Length = FilterString.length();
+        int Exceeded = MaxErrors + 1;
+        int[] Column = new int[Length + 1];
+        for (int i = 0; i <= Length; i++)
+            Column[i] = i;
+        int Last = Math.min(MaxErrors, Length);
+        int Best = Last == Length ? Length : Exceeded;
+        for (int q = 0; q < Key.length() && Best > 0; q++) {
+            char KeyChar = Character.toLowerCase(Key.charAt(q));
+            int End = Math.min(Length, Last + 1);
+            int Diagonal = 0;
+            for (int i = 1; i <= End; i++) {
+                int Up = i <= Last ? Column[i] : Exceeded;
+                int Cost = Character.toLowerCase(FilterString.charAt(i - 1)) == KeyChar ? 0 : 1;
+                Column[i] = Math.min(Math.min(Up, Column[i - 1]) + 1, Diagonal + Cost);
+                Diagonal = Up;
+            }
+            Last = End;
+            while (Column[Last] > MaxErrors)
+                Last--;
+            if (Last == Length)
+                Best = Math.min(Best, Column[Length]);
+        }
+        return Best;
+    }
+}
@@ -1,25 +1,37 @@
 package ru.mail.dondokidon.extensions;
 
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class that allows you to sort by multiple attributes.
  *
  * <h3>How it works:</h3>
- * 1. Perform sorting by sortingDegree.
- * 2. Equal items (by result of this degree comparison) are separated into subgroups.
- * 3. If (sortingDegree < getSortingDegreesCount() - 1) for each subgroup goto (1)
- * with sortingDegree++.
+ * 1. Perform single sorting, where items are compared by sortingDegree 0 and, if they are
+ * equal, by next sortingDegree and so on.
+ * 2. Adjacent items are compared once more to find first sortingDegree by which they
+ * differ. Items are separated into subgroups of this sortingDegree and all deeper ones.
+ * <p>
+ * If {@link KeyedMultiComparator} is used, keys of all items are computed once before (1)
+ * and items are compared by them. Parallel sorting computes keys and compares adjacent
+ * items from several threads too.
  */
 public class MultiCompare {
+    private static final int PARALLEL_CHUNK = 4096;
 
     /**
      * Class for block header, which will be returned among sorted data by
@@ -41,6 +53,88 @@ public class MultiCompare {
         }
     }
 
+    /**
+     * Read-only list of sorted data with named subgroups, returned by {@link #sortIndexed}
+     * methods. It contains the same items as list returned by {@link #sortNamed}, but it
+     * doesn't copy sorted data. Only positions and degrees of headers are stored, and
+     * headers are created when they are accessed for the first time.
+     *
+     * @param <SortingType> The type of sorted objects
+     */
+    public static class SortedIndexedList<SortingType> extends AbstractList<Object> implements RandomAccess{
+        private final Object[] Data;
+        private final MultiComparator<? super SortingType> Comparator;
+        private final int[] HeaderPositions;
+        private final int[] HeaderDegrees;
+        private final SortedBlockName[] Headers;
+
+        private SortedIndexedList(@NotNull Object[] Data, @Nullable MultiComparator<? super SortingType> Comparator,
+                                  @NotNull int[] HeaderPositions, @NotNull int[] HeaderDegrees){
+            this.Data = Data;
+            this.Comparator = Comparator;
+            this.HeaderPositions = HeaderPositions;
+            this.HeaderDegrees = HeaderDegrees;
+            Headers = new SortedBlockName[HeaderPositions.length];
+        }
+
+        /**
+         * Returns header or sorted object at the specified position.
+         *
+         * @param index Index of the item to return
+         * @return {@link SortedBlockName} or sorted object
+         * @throws IndexOutOfBoundsException if index is out of range
+         */
+        @Override
+        @SuppressWarnings("unchecked") //Everything here has been checked before.
+        public Object get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            int Header = Arrays.binarySearch(HeaderPositions, index);
+            if (Header < 0)
+                return Data[index + Header + 1];
+            if (Headers[Header] == null) {
+                SortingType First = (SortingType) Data[index - Header];
+                int Degree = HeaderDegrees[Header];
+                String BlockName;
+                if (Comparator != null)
+                    BlockName = Comparator.getBlockName(First, Degree);
+                else
+                    BlockName = ((MultiComparable) First).getBlockName(Degree);
+                Headers[Header] = new SortedBlockName(Degree, BlockName);
+            }
+            return Headers[Header];
+        }
+
+        @Override
+        public int size() {
+            return Data.length + HeaderPositions.length;
+        }
+
+        /**
+         * @param index Index of the item
+         * @return Is item at passed position is {@link SortedBlockName}
+         */
+        public boolean isHeader(int index) {
+            return Arrays.binarySearch(HeaderPositions, index) >= 0;
+        }
+
+        /**
+         * @return Sorted positions of headers in this list
+         */
+        @NotNull
+        public int[] getHeaderPositions() {
+            return HeaderPositions.clone();
+        }
+
+        /**
+         * @return Degrees of headers in order of {@link #getHeaderPositions()}
+         */
+        @NotNull
+        public int[] getHeaderDegrees() {
+            return HeaderDegrees.clone();
+        }
+    }
+
     /**
      * Interface that class must implement to be able to compare its objects.
      *
@@ -112,6 +206,28 @@ public class MultiCompare {
         String getBlockName(SortingType obj, int sortingDegree);
     }
 
+    /**
+     * {@link MultiComparator} which compares objects by keys, e.g. collation keys or parsed
+     * dates. Keys are computed once for every object and sorting degree before sorting,
+     * instead of being derived on every comparison.
+     *
+     * @param <SortingType> The type of objects that may be compared
+     */
+    public interface KeyedMultiComparator<SortingType> extends MultiComparator<SortingType>{
+        /**
+         * Get key of object for passed sorting degree. Keys are compared by
+         * {@link Comparable#compareTo(Object)}, which must be consistent with
+         * {@link #compare(Object, Object, int)}. If key of either object is null, objects are
+         * compared by {@link #compare(Object, Object, int)} for this sorting degree instead.
+         *
+         * @param obj Object which key is needed
+         * @param sortingDegree Sorting degree
+         * @return Key or null to compare object by {@link #compare(Object, Object, int)}
+         */
+        @Nullable
+        Comparable<?> getSortKey(@NotNull SortingType obj, int sortingDegree);
+    }
+
     private static class SortedGroupNamePosition {
         int Position;
         int Degree;
@@ -198,34 +314,154 @@ public class MultiCompare {
         return rsortAndReturnArrayWithNamedBlocks(mas, Comparator);
     }
 
+    /**
+     * Sort array and name each subgroup of sorted data without copying sorted data
+     *
+     * @param mas Array to sort (will be sorted in result as well)
+     * @param <SortingType> The type of objects that will be compared
+     * @return View of sorted array with named subgroups
+     */
+    public static <SortingType extends MultiComparable<? super SortingType>> SortedIndexedList<SortingType> sortIndexed(
+            @NotNull List<SortingType> mas) {
+        Object[] pep = mas.toArray();
+
+        SortedIndexedList<SortingType> Return = rsortAndReturnIndexedList(pep, null);
+
+        ListIterator<SortingType> iter = mas.listIterator();
+        for (Object item : pep) {
+            iter.next();
+            //All items in Temp are SortingType class.
+            @SuppressWarnings("unchecked")
+            SortingType Cast = (SortingType) item;
+            iter.set(Cast);
+        }
+
+        return Return;
+    }
+
+    /**
+     * Sort array and name each subgroup of sorted data without copying sorted data
+     *
+     * @param mas Array to sort (will be sorted in result as well)
+     * @param Comparator {@link MultiComparator} which will compare objects in array
+     * @param <SortingType> The type of objects that will be compared
+     * @return View of sorted array with named subgroups
+     */
+    public static <SortingType> SortedIndexedList<SortingType> sortIndexed(
+            @NotNull List<SortingType> mas, @NotNull MultiComparator<? super SortingType> Comparator){
+        //All items in Temp are SortingType class.
+        @SuppressWarnings("unchecked")
+        SortingType[] HeapPollutionTemp = (SortingType[]) mas.toArray();
+
+        SortedIndexedList<SortingType> Return = rsortAndReturnIndexedList(HeapPollutionTemp, Comparator);
+
+        ListIterator<SortingType> iter = mas.listIterator();
+        for (SortingType item : HeapPollutionTemp) {
+            iter.next();
+            iter.set(item);
+        }
+
+        return Return;
+    }
+
+    /**
+     * Sort array and name each subgroup of sorted data without copying sorted data. Returned
+     * view reads passed array, so it must not be changed while view is used.
+     *
+     * @param mas Array to sort (will be sorted in result as well)
+     * @param <SortingType> The type of objects that will be compared
+     * @return View of sorted array with named subgroups
+     */
+    public static <SortingType extends MultiComparable<? super SortingType>> SortedIndexedList<SortingType> sortIndexed(
+            @NotNull SortingType[] mas) {
+        return rsortAndReturnIndexedList(mas, null);
+    }
+
+    /**
+     * Sort array and name each subgroup of sorted data without copying sorted data. Returned
+     * view reads passed array, so it must not be changed while view is used.
+     *
+     * @param mas Array to sort (will be sorted in result as well)
+     * @param Comparator {@link MultiComparator} which will compare objects in array
+     * @param <SortingType> The type of objects that will be compared
+     * @return View of sorted array with named subgroups
+     */
+    public static <SortingType> SortedIndexedList<SortingType> sortIndexed(
+            @NotNull SortingType[] mas, @NotNull MultiComparator<? super SortingType> Comparator){
+        return rsortAndReturnIndexedList(mas, Comparator);
+    }
+
     @SuppressWarnings("unchecked") //Everything here has been checked before.
+    private static <SortingType> SortedIndexedList<SortingType> rsortAndReturnIndexedList (
+            @NotNull Object[] mas, @Nullable MultiComparator<? super SortingType> Comparator){
+        if (mas.length == 0)
+            return new SortedIndexedList<>(mas, Comparator, new int[0], new int[0]);
+        ArrayList<SortedGroupNamePosition> Borders = rsort((SortingType[]) mas, Comparator);
+
+        int SortingDegreesCount;
+        if (Comparator != null)
+            SortingDegreesCount = Comparator.getSortingDegreesCount();
+        else
+            SortingDegreesCount = ((MultiComparable)mas[0]).getSortingDegreesCount();
+        int HeadersCount = 0;
+        for (int i = 0; i < Borders.size() - 1; i++)
+            HeadersCount += SortingDegreesCount - Borders.get(i).Degree;
+        int[] HeaderPositions = new int[HeadersCount];
+        int[] HeaderDegrees = new int[HeadersCount];
+        int Header = 0;
+        for (int i = 0; i < Borders.size() - 1; i++){
+            SortedGroupNamePosition Pos = Borders.get(i);
+            for (int q = Pos.Degree; q < SortingDegreesCount; q++, Header++){
+                HeaderPositions[Header] = Pos.Position + 1 + Header;
+                HeaderDegrees[Header] = q;
+            }
+        }
+        return new SortedIndexedList<>(mas, Comparator, HeaderPositions, HeaderDegrees);
+    }
+
     private static <SortingType> ArrayList<Object> rsortAndReturnArrayWithNamedBlocks (
             @NotNull SortingType[] mas, @Nullable MultiComparator<? super SortingType> Comparator){
+        return createArrayWithNamedBlocks(mas, Comparator, rsort(mas, Comparator));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private static <SortingType> ArrayList<Object> rparallelSortAndReturnArrayWithNamedBlocks (
+            @NotNull SortingType[] mas, @Nullable MultiComparator<? super SortingType> Comparator){
+        return createArrayWithNamedBlocks(mas, Comparator, rparallelSort(mas, Comparator));
+    }
+
+    @SuppressWarnings("unchecked") //Everything here has been checked before.
+    private static <SortingType> ArrayList<Object> createArrayWithNamedBlocks (
+            @NotNull SortingType[] mas, @Nullable MultiComparator<? super SortingType> Comparator,
+            @NotNull ArrayList<SortedGroupNamePosition> Borders){
         if (mas.length == 0)
             return new ArrayList<>();
-        ArrayList<SortedGroupNamePosition> Borders = rsort(mas, Comparator);
 
         int SortingDegreesCount;
         if (Comparator != null)
             SortingDegreesCount = Comparator.getSortingDegreesCount();
         else
             SortingDegreesCount = ((MultiComparable)mas[0]).getSortingDegreesCount();
-        ArrayList<Object> Return = new ArrayList<>();
-        Collections.addAll(Return, mas);
+        int HeadersCount = 0;
+        for (int i = 0; i < Borders.size() - 1; i++)
+            HeadersCount += SortingDegreesCount - Borders.get(i).Degree;
+        ArrayList<Object> Result = new ArrayList<>(mas.length + HeadersCount);
         for (int i = 0; i < Borders.size() - 1; i++){
             SortedGroupNamePosition Pos = Borders.get(i);
-            for (int q = Pos.Degree, AddsCount = 0; q < SortingDegreesCount; q++, AddsCount++){
+            SortingType First = mas[Pos.Position + 1];
+            for (int q = Pos.Degree; q < SortingDegreesCount; q++){
                 String BlockName;
                 if (Comparator != null)
-                    BlockName = Comparator.getBlockName((SortingType) Return.get(Pos.Position + 1 + AddsCount), q);
+                    BlockName = Comparator.getBlockName(First, q);
                 else
-                    BlockName = ((MultiComparable)Return.get(Pos.Position + 1 + AddsCount)).getBlockName(q);
-                Return.add(Pos.Position + 1 + AddsCount, new SortedBlockName(q, BlockName));
+                    BlockName = ((MultiComparable)First).getBlockName(q);
+                Result.add(new SortedBlockName(q, BlockName));
             }
-            for (int q = i + 1; q < Borders.size(); q++)
-                Borders.get(q).Position += SortingDegreesCount - Pos.Degree;
+            int End = Borders.get(i + 1).Position + 1;
+            for (int q = Pos.Position + 1; q < End; q++)
+                Result.add(mas[q]);
         }
-        return Return;
+        return Result;
     }
 
     /**
@@ -276,7 +512,7 @@ public class MultiCompare {
         ListIterator<SortingType> iter = mas.listIterator();
         for (SortingType item : HeapPollutionTemp) {
             iter.next();
-            iter.set((SortingType)item);
+            iter.set(item);
         }
     }
 
@@ -290,65 +526,426 @@ public class MultiCompare {
         rsort(mas, null);
     }
 
+    /**
+     * Sort array using all processors. Comparator is called from several threads.
+     *
+     * @param mas Array to sort
+     * @param Comparator {@link MultiComparator} which will compare objects in array
+     * @param <SortingType> The type of objects that will be compared
+     * @see #sort(Object[], MultiComparator)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType> void parallelSort(@NotNull SortingType[] mas, @NotNull MultiComparator<? super SortingType> Comparator){
+        rparallelSort(mas, Comparator);
+    }
+
+    /**
+     * Sort array using all processors. Objects are compared from several threads.
+     *
+     * @param mas Array to sort
+     * @param <SortingType> The type of objects that will be compared
+     * @see #sort(MultiComparable[])
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType extends MultiComparable<? super SortingType>> void parallelSort(@NotNull SortingType[] mas){
+        rparallelSort(mas, null);
+    }
+
+    /**
+     * Sort list using all processors. Objects are compared from several threads.
+     *
+     * @param mas List to sort
+     * @param <SortingType> The type of objects that will be compared
+     * @see #sort(List)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType extends MultiComparable<? super SortingType>> void parallelSort(@NotNull List<SortingType> mas){
+        Object[] Temp = mas.toArray();
+        rparallelSort(Temp, null);
+
+        ListIterator<SortingType> iter = mas.listIterator();
+        for (Object item : Temp) {
+            iter.next();
+            //All items in Temp are SortingType class.
+            @SuppressWarnings("unchecked")
+            SortingType Cast = (SortingType) item;
+            iter.set(Cast);
+        }
+    }
+
+    /**
+     * Sort list using all processors. Comparator is called from several threads.
+     *
+     * @param mas List to sort
+     * @param Comparator {@link MultiComparator} which will compare objects in list
+     * @param <SortingType> The type of objects that will be compared
+     * @see #sort(List, MultiComparator)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType> void parallelSort(
+            @NotNull List<SortingType> mas, @NotNull MultiComparator<? super SortingType> Comparator){
+        //All items in Temp are SortingType class.
+        @SuppressWarnings("unchecked")
+        SortingType[] HeapPollutionTemp = (SortingType[]) mas.toArray();
+        rparallelSort(HeapPollutionTemp, Comparator);
+
+        ListIterator<SortingType> iter = mas.listIterator();
+        for (SortingType item : HeapPollutionTemp) {
+            iter.next();
+            iter.set(item);
+        }
+    }
+
+    /**
+     * Sort array using all processors and name each subgroup of sorted data. Objects are
+     * compared from several threads.
+     *
+     * @param mas Array to sort (will be sorted in result as well)
+     * @param <SortingType> The type of objects that will be compared
+     * @return Sorted array with named subgroups
+     * @see #sortNamed(MultiComparable[])
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType extends MultiComparable<? super SortingType>> ArrayList<Object> parallelSortNamed(
+            @NotNull SortingType[] mas) {
+        return rparallelSortAndReturnArrayWithNamedBlocks(mas, null);
+    }
+
+    /**
+     * Sort array using all processors and name each subgroup of sorted data. Comparator is
+     * called from several threads.
+     *
+     * @param mas Array to sort (will be sorted in result as well)
+     * @param Comparator {@link MultiComparator} which will compare objects in array
+     * @param <SortingType> The type of objects that will be compared
+     * @return Sorted array with named subgroups
+     * @see #sortNamed(Object[], MultiComparator)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType> ArrayList<Object> parallelSortNamed(
+            @NotNull SortingType[] mas, @NotNull MultiComparator<? super SortingType> Comparator){
+        return rparallelSortAndReturnArrayWithNamedBlocks(mas, Comparator);
+    }
+
+    /**
+     * Sort list using all processors and name each subgroup of sorted data. Objects are
+     * compared from several threads.
+     *
+     * @param mas List to sort (will be sorted in result as well)
+     * @param <SortingType> The type of objects that will be compared
+     * @return Sorted array with named subgroups
+     * @see #sortNamed(List)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType extends MultiComparable<? super SortingType>> ArrayList<Object> parallelSortNamed(
+            @NotNull List<SortingType> mas) {
+        Object[] pep = mas.toArray();
+
+        ArrayList<Object> Return = rparallelSortAndReturnArrayWithNamedBlocks(pep, null);
+
+        ListIterator<SortingType> iter = mas.listIterator();
+        for (Object item : pep) {
+            iter.next();
+            //All items in Temp are SortingType class.
+            @SuppressWarnings("unchecked")
+            SortingType Cast = (SortingType) item;
+            iter.set(Cast);
+        }
+
+        return Return;
+    }
+
+    /**
+     * Sort list using all processors and name each subgroup of sorted data. Comparator is
+     * called from several threads.
+     *
+     * @param mas List to sort (will be sorted in result as well)
+     * @param Comparator {@link MultiComparator} which will compare objects in list
+     * @param <SortingType> The type of objects that will be compared
+     * @return Sorted array with named subgroups
+     * @see #sortNamed(List, MultiComparator)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public static <SortingType> ArrayList<Object> parallelSortNamed(
+            @NotNull List<SortingType> mas, @NotNull MultiComparator<? super SortingType> Comparator){
+        //All items in Temp are SortingType class.
+        @SuppressWarnings("unchecked")
+        SortingType[] HeapPollutionTemp = (SortingType[]) mas.toArray();
+
+        ArrayList<Object> Return = rparallelSortAndReturnArrayWithNamedBlocks(HeapPollutionTemp, Comparator);
+
+        ListIterator<SortingType> iter = mas.listIterator();
+        for (SortingType item : HeapPollutionTemp) {
+            iter.next();
+            iter.set(item);
+        }
+
+        return Return;
+    }
+
     @SuppressWarnings("unchecked") //Everything here has been checked before.
     private static <ComparatorSortingType, SortingType extends ComparatorSortingType> ArrayList<SortedGroupNamePosition> rsort(
             @NotNull SortingType[] mas, @Nullable final MultiComparator<ComparatorSortingType> Comparator){
         if (mas.length == 0)
             return new ArrayList<>();
+        int SortingDegreesCount = getSortingDegreesCount(mas, Comparator);
+        if (Comparator instanceof KeyedMultiComparator)
+            return rsortByKeys(mas, (KeyedMultiComparator<ComparatorSortingType>) Comparator, SortingDegreesCount);
+        LexicographicComparator<ComparatorSortingType> LCompar =
+                new LexicographicComparator<>(Comparator, SortingDegreesCount);
+        Arrays.sort(mas, LCompar);
+
         ArrayList<SortedGroupNamePosition> Borders = new ArrayList<>();
         Borders.add(new SortedGroupNamePosition(-1, 0));
+        for (int q = 0; q < mas.length - 1; q++) {
+            int Degree = LCompar.getDifferenceDegree(mas[q], mas[q + 1]);
+            if (Degree < SortingDegreesCount)
+                Borders.add(new SortedGroupNamePosition(q, Degree));
+        }
         Borders.add(new SortedGroupNamePosition(mas.length - 1, 0));
+        return Borders;
+    }
 
-        OriginalComparator<ComparatorSortingType> OCompar = new OriginalComparator<ComparatorSortingType>() {
-            @Override
-            public int compare(ComparatorSortingType o1, ComparatorSortingType o2) {
-                if (Comparator != null)
-                    return Comparator.compare(o1, o2, Degree);
-                else
-                    return ((MultiComparable<ComparatorSortingType>) o1).compareTo(o2, Degree);
-            }
-        };
+    @SuppressWarnings("unchecked") //Everything here has been checked before.
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private static <ComparatorSortingType, SortingType extends ComparatorSortingType> ArrayList<SortedGroupNamePosition> rparallelSort(
+            @NotNull SortingType[] mas, @Nullable final MultiComparator<ComparatorSortingType> Comparator){
+        if (mas.length == 0)
+            return new ArrayList<>();
+        int SortingDegreesCount = getSortingDegreesCount(mas, Comparator);
+        if (Comparator instanceof KeyedMultiComparator)
+            return rparallelSortByKeys(mas, (KeyedMultiComparator<ComparatorSortingType>) Comparator, SortingDegreesCount);
+        LexicographicComparator<ComparatorSortingType> LCompar =
+                new LexicographicComparator<>(Comparator, SortingDegreesCount);
+        Arrays.parallelSort(mas, LCompar);
+
+        int[] Degrees = new int[mas.length - 1];
+        ForkJoinPool.commonPool().invoke(new DifferenceDegreesTask<>(mas, LCompar, Degrees, 0, Degrees.length));
+        return getBorders(Degrees, SortingDegreesCount);
+    }
 
-        int SortingDegreesCount;
+    @SuppressWarnings("unchecked") //Everything here has been checked before.
+    private static <ComparatorSortingType, SortingType extends ComparatorSortingType> ArrayList<SortedGroupNamePosition> rsortByKeys(
+            @NotNull SortingType[] mas, @NotNull KeyedMultiComparator<ComparatorSortingType> Comparator,
+            int SortingDegreesCount){
+        KeyedObject[] Keyed = new KeyedObject[mas.length];
+        fillKeyedObjects(mas, Comparator, SortingDegreesCount, Keyed, 0, mas.length);
+        KeyedComparator<ComparatorSortingType> KCompar = new KeyedComparator<>(Comparator, SortingDegreesCount);
+        Arrays.sort(Keyed, KCompar);
+        for (int i = 0; i < mas.length; i++)
+            mas[i] = (SortingType) Keyed[i].Object;
+
+        ArrayList<SortedGroupNamePosition> Borders = new ArrayList<>();
+        Borders.add(new SortedGroupNamePosition(-1, 0));
+        for (int q = 0; q < mas.length - 1; q++) {
+            int Degree = KCompar.getDifferenceDegree(Keyed[q], Keyed[q + 1]);
+            if (Degree < SortingDegreesCount)
+                Borders.add(new SortedGroupNamePosition(q, Degree));
+        }
+        Borders.add(new SortedGroupNamePosition(mas.length - 1, 0));
+        return Borders;
+    }
+
+    @SuppressWarnings("unchecked") //Everything here has been checked before.
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private static <ComparatorSortingType, SortingType extends ComparatorSortingType> ArrayList<SortedGroupNamePosition> rparallelSortByKeys(
+            @NotNull SortingType[] mas, @NotNull KeyedMultiComparator<ComparatorSortingType> Comparator,
+            int SortingDegreesCount){
+        KeyedObject[] Keyed = new KeyedObject[mas.length];
+        ForkJoinPool.commonPool().invoke(
+                new SortKeysTask<>(mas, Comparator, SortingDegreesCount, Keyed, 0, mas.length));
+        KeyedComparator<ComparatorSortingType> KCompar = new KeyedComparator<>(Comparator, SortingDegreesCount);
+        Arrays.parallelSort(Keyed, KCompar);
+        for (int i = 0; i < mas.length; i++)
+            mas[i] = (SortingType) Keyed[i].Object;
+
+        int[] Degrees = new int[mas.length - 1];
+        ForkJoinPool.commonPool().invoke(new DifferenceDegreesTask<>(Keyed, KCompar, Degrees, 0, Degrees.length));
+        return getBorders(Degrees, SortingDegreesCount);
+    }
+
+    @SuppressWarnings("unchecked") //Everything here has been checked before.
+    private static <ComparatorSortingType> int getSortingDegreesCount(
+            @NotNull ComparatorSortingType[] mas, @Nullable MultiComparator<ComparatorSortingType> Comparator){
         if (Comparator != null)
-            SortingDegreesCount = Comparator.getSortingDegreesCount();
+            return Comparator.getSortingDegreesCount();
         else
-            SortingDegreesCount = ((MultiComparable)mas[0]).getSortingDegreesCount();
-        for (int degree = 0; degree < SortingDegreesCount; degree++) {
-            for (int i = 0; i <= Borders.size() - 2; i++) {
-                OCompar.setDegree(degree);
-                Arrays.sort(mas, Borders.get(i).Position + 1, Borders.get(i + 1).Position + 1, OCompar);
+            return ((MultiComparable)mas[0]).getSortingDegreesCount();
+    }
+
+    /**
+     * Compute keys of objects in range [From, To) and put them with objects to Keyed.
+     */
+    private static <ComparatorSortingType> void fillKeyedObjects(
+            @NotNull ComparatorSortingType[] mas, @NotNull KeyedMultiComparator<ComparatorSortingType> Comparator,
+            int SortingDegreesCount, @NotNull KeyedObject[] Keyed, int From, int To){
+        for (int i = From; i < To; i++) {
+            Comparable<?>[] Keys = new Comparable<?>[SortingDegreesCount];
+            for (int degree = 0; degree < SortingDegreesCount; degree++)
+                Keys[degree] = Comparator.getSortKey(mas[i], degree);
+            Keyed[i] = new KeyedObject(mas[i], Keys);
+        }
+    }
+
+    /**
+     * Collect borders of subgroups from first sorting degrees by which adjacent objects differ.
+     */
+    private static ArrayList<SortedGroupNamePosition> getBorders(@NotNull int[] Degrees, int SortingDegreesCount){
+        ArrayList<SortedGroupNamePosition> Borders = new ArrayList<>();
+        Borders.add(new SortedGroupNamePosition(-1, 0));
+        for (int q = 0; q < Degrees.length; q++)
+            if (Degrees[q] < SortingDegreesCount)
+                Borders.add(new SortedGroupNamePosition(q, Degrees[q]));
+        Borders.add(new SortedGroupNamePosition(Degrees.length, 0));
+        return Borders;
+    }
+
+    /**
+     * Object with its keys of all sorting degrees.
+     */
+    private static class KeyedObject{
+        final Object Object;
+        final Comparable<?>[] Keys;
+
+        KeyedObject(Object Object, @NotNull Comparable<?>[] Keys){
+            this.Object = Object;
+            this.Keys = Keys;
+        }
+    }
+
+    /**
+     * Comparator which compares objects by all sorting degrees, from the first one.
+     */
+    private static class LexicographicComparator <ComparatorSortingType> implements Comparator<ComparatorSortingType>{
+        final MultiComparator<ComparatorSortingType> Comparator;
+        final int SortingDegreesCount;
+
+        LexicographicComparator(@Nullable MultiComparator<ComparatorSortingType> Comparator, int SortingDegreesCount){
+            this.Comparator = Comparator;
+            this.SortingDegreesCount = SortingDegreesCount;
+        }
+
+        @Override
+        public int compare(ComparatorSortingType o1, ComparatorSortingType o2) {
+            for (int degree = 0; degree < SortingDegreesCount; degree++) {
+                int Result = compare(o1, o2, degree);
+                if (Result != 0)
+                    return Result;
             }
-            ArrayList<SortedGroupNamePosition> TempBorders = new ArrayList<>(Borders);
-            int subSortingsCount = 0;
-            for (int i = 0; i <= TempBorders.size() - 2; i++){
-                subSortingsCount++;
-                int leftBorder = TempBorders.get(i).Position + 1, rightBorder = TempBorders.get(i + 1).Position;
-                for (int q = leftBorder; q <= rightBorder - 1; q++){
-                    if (Comparator != null) {
-                        if (Comparator.compare(mas[q], mas[q + 1], degree) != 0) {
-                            Borders.add(subSortingsCount, new SortedGroupNamePosition(q, degree));
-                            subSortingsCount++;
-                        }
-                    }else
-                        if ((((MultiComparable<ComparatorSortingType>)mas[q]).compareTo(mas[q + 1], degree) != 0)){
-                            Borders.add(subSortingsCount, new SortedGroupNamePosition(q, degree));
-                            subSortingsCount++;
-                        }
-                }
+            return 0;
+        }
+
+        /**
+         * Get first sorting degree by which objects differ.
+         *
+         * @return Sorting degree or count of sorting degrees if objects are equal
+         */
+        int getDifferenceDegree(ComparatorSortingType o1, ComparatorSortingType o2) {
+            int degree = 0;
+            while (degree < SortingDegreesCount && compare(o1, o2, degree) == 0)
+                degree++;
+            return degree;
+        }
+
+        @SuppressWarnings("unchecked") //Everything here has been checked before.
+        int compare(ComparatorSortingType o1, ComparatorSortingType o2, int degree) {
+            if (Comparator != null)
+                return Comparator.compare(o1, o2, degree);
+            else
+                return ((MultiComparable<ComparatorSortingType>) o1).compareTo(o2, degree);
+        }
+    }
+
+    /**
+     * Task which finds first sorting degree by which adjacent objects differ, for pairs in
+     * range [From, To).
+     */
+    @SuppressWarnings("serial") //Tasks are never serialized.
+    private static class DifferenceDegreesTask <ComparatorSortingType> extends RecursiveAction{
+        final ComparatorSortingType[] Data;
+        final LexicographicComparator<ComparatorSortingType> Comparator;
+        final int[] Degrees;
+        final int From;
+        final int To;
+
+        DifferenceDegreesTask(@NotNull ComparatorSortingType[] Data,
+                              @NotNull LexicographicComparator<ComparatorSortingType> Comparator,
+                              @NotNull int[] Degrees, int From, int To){
+            this.Data = Data;
+            this.Comparator = Comparator;
+            this.Degrees = Degrees;
+            this.From = From;
+            this.To = To;
+        }
+
+        @Override
+        protected void compute() {
+            if (To - From <= PARALLEL_CHUNK) {
+                for (int q = From; q < To; q++)
+                    Degrees[q] = Comparator.getDifferenceDegree(Data[q], Data[q + 1]);
+                return;
             }
+            int Middle = (From + To) >>> 1;
+            invokeAll(new DifferenceDegreesTask<>(Data, Comparator, Degrees, From, Middle),
+                    new DifferenceDegreesTask<>(Data, Comparator, Degrees, Middle, To));
         }
-        return Borders;
     }
 
+    /**
+     * Comparator which compares {@link KeyedObject}s by their keys or, if key is null, by
+     * {@link MultiComparator#compare(Object, Object, int)} of their objects.
+     */
+    private static class KeyedComparator <ComparatorSortingType> extends LexicographicComparator<KeyedObject>{
+        final KeyedMultiComparator<ComparatorSortingType> KeyComparator;
 
-    private static abstract class OriginalComparator <ComparatorSortingType> implements Comparator<ComparatorSortingType>{
-        int Degree;
+        KeyedComparator(@NotNull KeyedMultiComparator<ComparatorSortingType> KeyComparator, int SortingDegreesCount){
+            super(null, SortingDegreesCount);
+            this.KeyComparator = KeyComparator;
+        }
 
-        void setDegree(int degree) {
-            Degree = degree;
+        @SuppressWarnings("unchecked") //Keys of the same degree are comparable to each other.
+        @Override
+        int compare(KeyedObject o1, KeyedObject o2, int degree) {
+            Comparable<?> Key1 = o1.Keys[degree];
+            Comparable<?> Key2 = o2.Keys[degree];
+            if (Key1 == null || Key2 == null)
+                return KeyComparator.compare((ComparatorSortingType) o1.Object, (ComparatorSortingType) o2.Object, degree);
+            return ((Comparable<Object>) Key1).compareTo(Key2);
         }
+    }
 
-        abstract public int compare(ComparatorSortingType o1, ComparatorSortingType o2);
+    /**
+     * Task which computes keys of objects in range [From, To).
+     */
+    @SuppressWarnings("serial") //Tasks are never serialized.
+    private static class SortKeysTask <ComparatorSortingType> extends RecursiveAction{
+        final ComparatorSortingType[] Data;
+        final KeyedMultiComparator<ComparatorSortingType> Comparator;
+        final int SortingDegreesCount;
+        final KeyedObject[] Keyed;
+        final int From;
+        final int To;
+
+        SortKeysTask(@NotNull ComparatorSortingType[] Data,
+                     @NotNull KeyedMultiComparator<ComparatorSortingType> Comparator, int SortingDegreesCount,
+                     @NotNull KeyedObject[] Keyed, int From, int To){
+            this.Data = Data;
+            this.Comparator = Comparator;
+            this.SortingDegreesCount = SortingDegreesCount;
+            this.Keyed = Keyed;
+            this.From = From;
+            this.To = To;
+        }
+
+        @Override
+        protected void compute() {
+            if (To - From <= PARALLEL_CHUNK) {
+                fillKeyedObjects(Data, Comparator, SortingDegreesCount, Keyed, From, To);
+                return;
+            }
+            int Middle = (From + To) >>> 1;
+            invokeAll(new SortKeysTask<>(Data, Comparator, SortingDegreesCount, Keyed, From, Middle),
+                    new SortKeysTask<>(Data, Comparator, SortingDegreesCount, Keyed, Middle, To));
+        }
     }
 }
@@ -0,0 +1,312 @@
+package ru.mail.dondokidon.extensions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Inverted index from trigrams (substrings of 3 chars) to elements of
+ * {@link FilterableArrayList} which keys contain them.
+ *
+ * <h3>How it works:</h3>
+ * Every element gets id when it is added. Posting list of every trigram stores ids in order
+ * they were given, so lists are sorted and can be intersected in one pass. Ids don't change
+ * when elements are shifted, so insertion and removal touch only posting lists of changed
+ * elements. Position of every id is recomputed lazily when candidates are requested after
+ * shifting changes. Ids of removed elements are dropped from posting lists when they make
+ * up half of given ids.
+ */
+final class TrigramIndex {
+    private final HashMap<Long, IdList> Postings = new HashMap<>();
+    private int[] Ids = new int[16];
+    private int Size = 0;
+    private int[] Positions = new int[16];
+    private boolean PositionsDirty = false;
+    private int NextId = 0;
+    private int DeadCount = 0;
+
+    /**
+     * Insert element with passed key at real position.
+     */
+    void insert(int position, @Nullable String key){
+        if (Size == Ids.length)
+            Ids = Arrays.copyOf(Ids, Size << 1);
+        System.arraycopy(Ids, position, Ids, position + 1, Size - position);
+        int Id = newId(key);
+        Ids[position] = Id;
+        Positions[Id] = position;
+        if (position != Size)
+            PositionsDirty = true;
+        Size++;
+    }
+
+    /**
+     * Replace key of element at real position.
+     */
+    void set(int position, @Nullable String key){
+        killId(Ids[position]);
+        int Id = newId(key);
+        Ids[position] = Id;
+        Positions[Id] = position;
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove elements in range [fromPosition, toPosition).
+     */
+    void remove(int fromPosition, int toPosition){
+        for (int i = fromPosition; i < toPosition; i++)
+            killId(Ids[i]);
+        System.arraycopy(Ids, toPosition, Ids, fromPosition, Size - toPosition);
+        if (toPosition != Size)
+            PositionsDirty = true;
+        Size -= toPosition - fromPosition;
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove elements at positions marked in passed bitmap.
+     */
+    void removeAll(@NotNull long[] removed){
+        int Count = 0;
+        for (int i = 0; i < Size; i++) {
+            if ((removed[i >>> 6] & (1L << i)) != 0)
+                killId(Ids[i]);
+            else
+                Ids[Count++] = Ids[i];
+        }
+        if (Count != Size)
+            PositionsDirty = true;
+        Size = Count;
+        compactIfNeeded();
+    }
+
+    /**
+     * Move elements into new order. Posting lists are not changed.
+     *
+     * @param order Old real positions of elements in new order
+     */
+    void reorder(@NotNull Integer[] order){
+        int[] OldIds = Arrays.copyOf(Ids, Size);
+        for (int i = 0; i < Size; i++)
+            Ids[i] = OldIds[order[i]];
+        PositionsDirty = true;
+    }
+
+    /**
+     * Remove all elements.
+     */
+    void clear(){
+        Postings.clear();
+        Ids = new int[16];
+        Positions = new int[16];
+        Size = 0;
+        NextId = 0;
+        DeadCount = 0;
+        PositionsDirty = false;
+    }
+
+    /**
+     * Find positions of elements which keys contain all trigrams of passed query.
+     *
+     * @param query String to search
+     * @return Sorted real positions of candidates or null if query is shorter than trigram
+     */
+    @Nullable
+    int[] candidates(@NotNull String query){
+        if (query.length() < 3)
+            return null;
+        IdList[] Lists = new IdList[query.length() - 2];
+        int ListsCount = 0;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            IdList List = Postings.get(trigram(query, i));
+            if (List == null)
+                return new int[0];
+            boolean Duplicate = false;
+            for (int q = 0; q < ListsCount && !Duplicate; q++)
+                Duplicate = Lists[q] == List;
+            if (!Duplicate)
+                Lists[ListsCount++] = List;
+        }
+        for (int i = 1; i < ListsCount; i++)
+            if (Lists[i].Size < Lists[0].Size) {
+                IdList Temp = Lists[0];
+                Lists[0] = Lists[i];
+                Lists[i] = Temp;
+            }
+        updatePositions();
+        int[] Cursors = new int[ListsCount];
+        int[] Result = new int[Lists[0].Size];
+        int Count = 0;
+        candidates:
+        for (int i = 0; i < Lists[0].Size; i++) {
+            int Id = Lists[0].Data[i];
+            if (Positions[Id] == -1)
+                continue;
+            for (int q = 1; q < ListsCount; q++) {
+                IdList List = Lists[q];
+                int Cursor = Cursors[q];
+                while (Cursor < List.Size && List.Data[Cursor] < Id)
+                    Cursor++;
+                Cursors[q] = Cursor;
+                if (Cursor == List.Size)
+                    break candidates;
+                if (List.Data[Cursor] != Id)
+                    continue candidates;
+            }
+            Result[Count++] = Positions[Id];
+        }
+        Result = Arrays.copyOf(Result, Count);
+        Arrays.sort(Result);
+        return Result;
+    }
+
+    /**
+     * Write posting lists in format read by {@link #read(ByteBuffer, int)}. Ids are replaced
+     * by positions before writing.
+     */
+    void write(@NotNull DataOutput out) throws IOException{
+        compact();
+        out.writeInt(Postings.size());
+        for (Map.Entry<Long, IdList> Entry : Postings.entrySet()) {
+            IdList List = Entry.getValue();
+            out.writeLong(Entry.getKey());
+            out.writeInt(List.Size);
+            for (int i = 0; i < List.Size; i++)
+                out.writeInt(List.Data[i]);
+        }
+    }
+
+    /**
+     * Read index written by {@link #write(DataOutput)}.
+     *
+     * @param in Buffer positioned at the start of index, which is moved to its end
+     * @param size Count of elements
+     * @throws IOException if index is corrupted
+     */
+    @NotNull
+    static TrigramIndex read(@NotNull ByteBuffer in, int size) throws IOException{
+        TrigramIndex Index = new TrigramIndex();
+        Index.Ids = new int[Math.max(16, size)];
+        Index.Positions = new int[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            Index.Ids[i] = i;
+            Index.Positions[i] = i;
+        }
+        Index.Size = size;
+        Index.NextId = size;
+        int Count = in.getInt();
+        if (Count < 0)
+            throw new IOException("Corrupted trigram index");
+        for (int i = Count; i > 0; i--) {
+            Long Trigram = in.getLong();
+            IdList List = new IdList();
+            List.Size = in.getInt();
+            if (List.Size <= 0 || List.Size > size || List.Size > in.remaining() >>> 2)
+                throw new IOException("Corrupted trigram index");
+            List.Data = new int[List.Size];
+            in.asIntBuffer().get(List.Data);
+            in.position(in.position() + (List.Size << 2));
+            if (List.Data[0] < 0 || List.Data[List.Size - 1] >= size)
+                throw new IOException("Corrupted trigram index");
+            for (int q = 1; q < List.Size; q++)
+                if (List.Data[q] <= List.Data[q - 1])
+                    throw new IOException("Corrupted trigram index");
+            Index.Postings.put(Trigram, List);
+        }
+        return Index;
+    }
+
+    private int newId(@Nullable String key){
+        if (NextId == Positions.length)
+            Positions = Arrays.copyOf(Positions, NextId << 1);
+        int Id = NextId++;
+        addPostings(Id, key);
+        return Id;
+    }
+
+    private void addPostings(int id, @Nullable String key){
+        if (key == null)
+            return;
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            Long Trigram = trigram(key, i);
+            IdList List = Postings.get(Trigram);
+            if (List == null) {
+                List = new IdList();
+                Postings.put(Trigram, List);
+            }
+            if (List.Size == 0 || List.Data[List.Size - 1] != id)
+                List.add(id);
+        }
+    }
+
+    private void killId(int id){
+        Positions[id] = -1;
+        DeadCount++;
+    }
+
+    private void updatePositions(){
+        if (!PositionsDirty)
+            return;
+        for (int i = 0; i < Size; i++)
+            Positions[Ids[i]] = i;
+        PositionsDirty = false;
+    }
+
+    /**
+     * Give new ids equal to positions and drop removed ids from posting lists when removed
+     * ids make up half of given ids.
+     */
+    private void compactIfNeeded(){
+        if (DeadCount >= 64 && DeadCount >= NextId >>> 1)
+            compact();
+    }
+
+    private void compact(){
+        updatePositions();
+        int[] NewPositions = new int[Math.max(16, Size)];
+        for (int i = 0; i < Size; i++)
+            NewPositions[i] = i;
+        for (IdList List : Postings.values()) {
+            int Count = 0;
+            for (int i = 0; i < List.Size; i++) {
+                int Position = Positions[List.Data[i]];
+                if (Position != -1)
+                    List.Data[Count++] = Position;
+            }
+            List.Size = Count;
+            Arrays.sort(List.Data, 0, Count);
+        }
+        Iterator<IdList> mIterator = Postings.values().iterator();
+        while (mIterator.hasNext())
+            if (mIterator.next().Size == 0)
+                mIterator.remove();
+        for (int i = 0; i < Size; i++)
+            Ids[i] = i;
+        Positions = NewPositions;
+        NextId = Size;
+        DeadCount = 0;
+    }
+
+    private static Long trigram(@NotNull String s, int index){
+        return ((long) s.charAt(index) << 32) | ((long) s.charAt(index + 1) << 16) | s.charAt(index + 2);
+    }
+
+    private static class IdList{
+        int[] Data = new int[4];
+        int Size = 0;
+
+        void add(int id){
+            if (Size == Data.length)
+                Data = Arrays.copyOf(Data, Size << 1);
+            Data[Size++] = id;
+        }
+    }
+}